@@ -83,8 +83,24 @@ CREATE TABLE IF NOT EXISTS processing_status (
   created_time DATETIME,
   updated_time DATETIME,
   completed_time DATETIME,
+  stage VARCHAR(32),
+  lease_owner VARCHAR(128),
+  lease_token BIGINT DEFAULT 0,
+  lease_expires_time DATETIME,
+  heartbeat_time DATETIME,
+  attempts INT DEFAULT 0,
+  content_hash CHAR(64),
+  batch_id VARCHAR(64),
+  llm_calls INT,
+  llm_prompt_tokens INT,
+  llm_output_tokens INT,
+  llm_duration_ms BIGINT,
+  llm_metrics TEXT,
   INDEX idx_task_id (task_id),
-  INDEX idx_status (status)
+  INDEX idx_status (status),
+  INDEX idx_status_lease (status, lease_expires_time),
+  INDEX idx_content_hash (content_hash),
+  INDEX idx_batch_id (batch_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 -- custom_concepts table (user-defined concepts for graph personalization)
@@ -0,0 +1,35 @@
+-- Schema upgrades for databases created with an older init.sql
+-- (init.sql only runs on first start of the MySQL volume). Run once per upgrade step:
+--   docker exec -i lm_mysql mysql -uroot -p123456 manager < docker/mysql/upgrade.sql
+USE manager;
+
+-- Durable ingest queue: stage checkpoint and lease columns on processing_status
+ALTER TABLE processing_status
+  ADD COLUMN stage VARCHAR(32),
+  ADD COLUMN lease_owner VARCHAR(128),
+  ADD COLUMN lease_expires_time DATETIME,
+  ADD COLUMN heartbeat_time DATETIME,
+  ADD COLUMN attempts INT DEFAULT 0,
+  ADD INDEX idx_status_lease (status, lease_expires_time);
+
+-- Multi-node ingest: fencing token incremented on every claim
+ALTER TABLE processing_status
+  ADD COLUMN lease_token BIGINT DEFAULT 0 AFTER lease_owner;
+
+-- Upload deduplication: SHA-256 of the uploaded file
+ALTER TABLE processing_status
+  ADD COLUMN content_hash CHAR(64),
+  ADD INDEX idx_content_hash (content_hash);
+
+-- Batch upload: files uploaded together share a batch id
+ALTER TABLE processing_status
+  ADD COLUMN batch_id VARCHAR(64),
+  ADD INDEX idx_batch_id (batch_id);
+
+-- LLM metrics: token counts and time of the last processing run
+ALTER TABLE processing_status
+  ADD COLUMN llm_calls INT,
+  ADD COLUMN llm_prompt_tokens INT,
+  ADD COLUMN llm_output_tokens INT,
+  ADD COLUMN llm_duration_ms BIGINT,
+  ADD COLUMN llm_metrics TEXT;
@@ -2,29 +2,38 @@ package com.example.controller;
 
 import cn.hutool.core.io.FileUtil;
 import com.example.common.Result;
+import com.example.common.enums.ResultCodeEnum;
 import com.example.entity.ArticleInfo;
 import com.example.entity.ArticleSummary;
 import com.example.entity.ProcessingStatus;
 import com.example.service.ArticleService;
+import com.example.service.impl.BatchIngestService;
+import com.example.service.impl.DocxService;
+import com.example.service.impl.IngestQueueService;
+import com.example.service.impl.OllamaModelService;
 import com.example.service.impl.ProcessingStatusService;
 import com.example.service.impl.TaskService;
 import com.example.utils.AfterUpload;
 import com.example.utils.Config;
+import com.example.utils.DownloadUtil;
+import com.example.utils.UploadUtil;
 import com.github.pagehelper.PageInfo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.example.utils.neo4jloader.Neo4jLoader.runNeo4jLoader;
 
@@ -37,10 +46,22 @@ public class ArticleController {
 
     @Resource
     private TaskService taskService;
+
+    @Resource
+    private OllamaModelService ollamaModelService;
     
     @Resource
     private ProcessingStatusService processingStatusService;
 
+    @Resource
+    private IngestQueueService ingestQueueService;
+
+    @Resource
+    private DocxService docxService;
+
+    @Resource
+    private BatchIngestService batchIngestService;
+
     @Autowired
     private AfterUpload afterUpload;
 
@@ -59,13 +80,20 @@ public class ArticleController {
     }
 
     @PostMapping("/upload")
-    public Result<Map<String, String>> uploadArticle(@RequestParam("paperFile") MultipartFile paperFile) {
+    public Result<Map<String, String>> uploadArticle(@RequestParam("paperFile") MultipartFile paperFile,
+                                                     HttpServletResponse response) {
+        // Reject early when the ingest queue is full, before writing the file to disk
+        if (!ingestQueueService.hasCapacity()) {
+            return queueFull(response);
+        }
         try {
             // Generate unique task ID
             String taskId = UUID.randomUUID().toString();
             
-            // Save file
-            String paperFilePath = saveFile(paperFile, "paper");
+            // Save file, hashing it while it is written
+            UploadUtil.SavedFile saved = saveFile(paperFile, "paper");
+            String paperFilePath = saved.getFile().getPath();
+            String contentHash = saved.getSha256();
             
             // Create initial processing status
             ProcessingStatus status = new ProcessingStatus();
@@ -75,10 +103,28 @@ public class ArticleController {
             status.setProgress(10);
             status.setCurrentStep("文件上传成功");
             status.setFilePath(paperFilePath);
+            status.setContentHash(contentHash);
+            
+            // Identical file processed before: reuse its results instead of converting and calling the LLM again.
+            // Decided before the insert, so the row never shows up as claimable work for the workers.
+            ProcessingStatus previous = processingStatusService.findReusable(contentHash, taskId);
+            if (previous != null && afterUpload.reuseExtraction(status, previous)) {
+                processingStatusService.createReused(status);
+                Map<String, String> result = new HashMap<>();
+                result.put("taskId", taskId);
+                result.put("message", "该文件已处理过，已复用之前的提取结果");
+                return Result.success(result);
+            }
             processingStatusService.createStatus(status);
             
             // Start async processing with taskId
-            taskService.executeAsync(() -> afterUpload.processWithStatus(taskId, paperFilePath));
+            try {
+                ingestQueueService.enqueue(taskId, paperFilePath);
+            } catch (RejectedExecutionException e) {
+                processingStatusService.deleteStatus(taskId);
+                FileUtil.del(paperFilePath);
+                return queueFull(response);
+            }
             
             // Return taskId to frontend for status polling
             Map<String, String> result = new HashMap<>();
@@ -90,14 +136,56 @@ public class ArticleController {
         }
     }
 
+    /**
+     * Upload many papers at once: .pdf/.caj files and/or .zip archives of them
+     */
+    @PostMapping("/upload/batch")
+    public Result<Map<String, Object>> uploadBatch(@RequestParam("paperFiles") MultipartFile[] paperFiles) {
+        try {
+            return Result.success(batchIngestService.submit(paperFiles));
+        } catch (IllegalArgumentException e) {
+            return Result.error("400", e.getMessage());
+        } catch (Exception e) {
+            return Result.error("500", "批量上传失败：" + e.getMessage());
+        }
+    }
+
+    @GetMapping("/batch/{batchId}")
+    public Result<Map<String, Object>> getBatchProgress(@PathVariable String batchId) {
+        Map<String, Object> progress = batchIngestService.getProgress(batchId);
+        if (progress == null) {
+            return Result.error("404", "批次不存在");
+        }
+        return Result.success(progress);
+    }
+
+    private <T> Result<T> queueFull(HttpServletResponse response) {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Config.INGEST_RETRY_AFTER_SECONDS));
+        return Result.error(ResultCodeEnum.QUEUE_FULL_ERROR);
+    }
+
     @GetMapping("/processing-status/{taskId}")
     public Result<ProcessingStatus> getProcessingStatus(@PathVariable String taskId) {
         ProcessingStatus status = processingStatusService.getStatus(taskId);
         if (status == null) {
             return Result.error("404", "任务不存在");
         }
+        status.setQueuePosition(taskService.getQueuePosition(taskId));
         return Result.success(status);
     }
+
+    @GetMapping("/queue-stats")
+    public Result<Map<String, Object>> getQueueStats() {
+        Map<String, Object> stats = taskService.getStats();
+        stats.put("model", ollamaModelService.getStatus());
+        return Result.success(stats);
+    }
+
+    @GetMapping("/llm-status")
+    public Result<Map<String, Object>> getLlmStatus() {
+        return Result.success(ollamaModelService.getStatus());
+    }
     
     @PostMapping("/approve/{taskId}")
     public Result<String> approveAndSave(@PathVariable String taskId, @RequestBody ArticleInfo articleInfo) {
@@ -155,17 +243,10 @@ public class ArticleController {
         }
     }
 
-    private String saveFile(MultipartFile file, String type) throws IOException {
-        String uploadPath = Config.UPLOAD_PATH;
-        if (!FileUtil.isDirectory(uploadPath)) {
-            FileUtil.mkdir(uploadPath);
-        }
-        String originalFilename = file.getOriginalFilename();
-        String ext = FileUtil.getSuffix(originalFilename);
+    private UploadUtil.SavedFile saveFile(MultipartFile file, String type) throws IOException {
+        String ext = FileUtil.getSuffix(file.getOriginalFilename());
         String fileName = type + "_" + UUID.randomUUID() + "." + ext;
-        String filePath = uploadPath + "/" + fileName;
-        FileUtil.writeBytes(file.getBytes(), filePath);
-        return filePath;
+        return UploadUtil.save(file, new File(Config.UPLOAD_PATH, fileName));
     }
 
     @GetMapping("/file-paths/{title}")
@@ -175,24 +256,36 @@ public class ArticleController {
     }
 
     @GetMapping("/download/{title}/{field}")
-    public void downloadFile(@PathVariable String title, @PathVariable String field, HttpServletResponse response) {
+    public void downloadFile(@PathVariable String title, @PathVariable String field,
+                             HttpServletRequest request, HttpServletResponse response) {
         try {
             Map<String, String> filePaths = articleService.getFilePathsByTitle(title);
             String filePath = filePaths.get(field);
+            if (filePath != null && !FileUtil.exist(filePath) && filePaths.get("pathpdf") != null
+                    && ("pathdocx".equals(field) || "pathtxt".equals(field))) {
+                // docx is generated on first download and kept afterwards; a .txt lost in a restart is
+                // extracted again. The client retries after Retry-After instead of holding the request open.
+                File pdf = new File(filePaths.get("pathpdf"));
+                File ready = "pathdocx".equals(field)
+                        ? docxService.getDocxIfReady(pdf, new File(filePath))
+                        : docxService.getFullTextIfReady(pdf, new File(filePath));
+                if (ready == null) {
+                    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                    response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Config.DOCX_RETRY_AFTER_SECONDS));
+                    return;
+                }
+                filePath = ready.getPath();
+            }
             if (filePath == null || !FileUtil.exist(filePath)) {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 return;
             }
 
             String fileName = title + "_" + field + "." + FileUtil.getSuffix(filePath);
-            response.setHeader("Content-Disposition", "attachment; filename=" + java.net.URLEncoder.encode(fileName, "UTF-8"));
-            response.setContentType("application/octet-stream");
-
-            byte[] fileBytes = Files.readAllBytes(Paths.get(filePath));
-            OutputStream os = response.getOutputStream();
-            os.write(fileBytes);
-            os.flush();
-            os.close();
+            DownloadUtil.send(request, response, new File(filePath), fileName);
+        } catch (RejectedExecutionException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Config.DOCX_RETRY_AFTER_SECONDS));
         } catch (IOException e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             e.printStackTrace();
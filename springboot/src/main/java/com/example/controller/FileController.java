@@ -4,13 +4,15 @@ import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.StrUtil;
 import com.example.common.Result;
+import com.example.utils.DownloadUtil;
+import com.example.utils.UploadUtil;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.OutputStream;
-import java.net.URLEncoder;
+import java.io.File;
 import java.util.List;
 
 /**
@@ -41,11 +43,8 @@ public class FileController {
         }
         String fileName = file.getOriginalFilename();
         try {
-            if (!FileUtil.isDirectory(filePath)) {
-                FileUtil.mkdir(filePath);
-            }
             // 文件存储形式：时间戳-文件名
-            FileUtil.writeBytes(file.getBytes(), filePath + flag + "-" + fileName);  // ***/manager/files/1697438073596-avatar.png
+            UploadUtil.save(file, new File(filePath + flag + "-" + fileName));  // ***/manager/files/1697438073596-avatar.png
             System.out.println(fileName + "--上传成功");
 
         } catch (Exception e) {
@@ -60,20 +59,19 @@ public class FileController {
      * 获取文件
      *
      * @param flag
+     * @param request
      * @param response
      */
     @GetMapping("/{flag}")   //  1697438073596-avatar.png
-    public void avatarPath(@PathVariable String flag, HttpServletResponse response) {
-        OutputStream os;
+    public void avatarPath(@PathVariable String flag, HttpServletRequest request, HttpServletResponse response) {
         try {
             if (StrUtil.isNotEmpty(flag)) {
-                response.addHeader("Content-Disposition", "attachment;filename=" + URLEncoder.encode(flag, "UTF-8"));
-                response.setContentType("application/octet-stream");
-                byte[] bytes = FileUtil.readBytes(filePath + flag);
-                os = response.getOutputStream();
-                os.write(bytes);
-                os.flush();
-                os.close();
+                File file = new File(filePath + flag);
+                if (!file.isFile()) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+                DownloadUtil.send(request, response, file, flag);
             }
         } catch (Exception e) {
             System.out.println("文件下载失败");
@@ -9,7 +9,7 @@ public class ProcessingStatus {
     private Integer id;
     private String taskId;           // Unique task identifier
     private String fileName;         // Original file name
-    private String status;           // UPLOADING, CONVERTING, EXTRACTING, ANALYZING, PENDING_APPROVAL, APPROVED, REJECTED, FAILED
+    private String status;           // QUEUED, UPLOADING, CONVERTING, EXTRACTING, ANALYZING, PENDING_APPROVAL, APPROVED, REJECTED, FAILED
     private Integer progress;        // 0-100
     private String currentStep;      // Current processing step description
     private String errorMessage;     // Error message if failed
@@ -35,6 +35,26 @@ public class ProcessingStatus {
     private Date createdTime;
     private Date updatedTime;
     private Date completedTime;
+    private String contentHash;      // SHA-256 of the uploaded file, identical uploads reuse earlier results
+    private String batchId;          // Set for files uploaded together through the batch endpoint
+    
+    // Durable queue info
+    private String stage;            // Last completed stage: CONVERTED, METADATA_EXTRACTED
+    private String leaseOwner;       // Node currently holding the task
+    private Long leaseToken;         // Fencing token, incremented on every claim
+    private Date leaseExpiresTime;   // Lease expiry, extended by heartbeats
+    private Date heartbeatTime;      // Last heartbeat from the lease owner
+    private Integer attempts;        // Number of times the task was claimed
+    
+    // LLM usage of the last processing run
+    private Integer llmCalls;         // Calls sent to Ollama (cache hits not counted)
+    private Integer llmPromptTokens;
+    private Integer llmOutputTokens;
+    private Long llmDurationMs;       // Summed over calls
+    private String llmMetrics;        // JSON: per-stage calls, tokens and load/prompt/eval times
+    
+    // Runtime info (not persisted)
+    private Integer queuePosition;   // 1-based position in the ingest queue, 0 if running or not queued
     
     public ProcessingStatus() {
     }
@@ -222,4 +242,116 @@ public class ProcessingStatus {
     public void setExtractedCustomConcept3(String extractedCustomConcept3) {
         this.extractedCustomConcept3 = extractedCustomConcept3;
     }
+    
+    public Integer getQueuePosition() {
+        return queuePosition;
+    }
+    
+    public void setQueuePosition(Integer queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+    
+    public String getStage() {
+        return stage;
+    }
+    
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+    
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+    
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+    
+    public Long getLeaseToken() {
+        return leaseToken;
+    }
+    
+    public void setLeaseToken(Long leaseToken) {
+        this.leaseToken = leaseToken;
+    }
+    
+    public Date getLeaseExpiresTime() {
+        return leaseExpiresTime;
+    }
+    
+    public void setLeaseExpiresTime(Date leaseExpiresTime) {
+        this.leaseExpiresTime = leaseExpiresTime;
+    }
+    
+    public Date getHeartbeatTime() {
+        return heartbeatTime;
+    }
+    
+    public void setHeartbeatTime(Date heartbeatTime) {
+        this.heartbeatTime = heartbeatTime;
+    }
+    
+    public Integer getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public String getBatchId() {
+        return batchId;
+    }
+    
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+    
+    public Integer getLlmCalls() {
+        return llmCalls;
+    }
+    
+    public void setLlmCalls(Integer llmCalls) {
+        this.llmCalls = llmCalls;
+    }
+    
+    public Integer getLlmPromptTokens() {
+        return llmPromptTokens;
+    }
+    
+    public void setLlmPromptTokens(Integer llmPromptTokens) {
+        this.llmPromptTokens = llmPromptTokens;
+    }
+    
+    public Integer getLlmOutputTokens() {
+        return llmOutputTokens;
+    }
+    
+    public void setLlmOutputTokens(Integer llmOutputTokens) {
+        this.llmOutputTokens = llmOutputTokens;
+    }
+    
+    public Long getLlmDurationMs() {
+        return llmDurationMs;
+    }
+    
+    public void setLlmDurationMs(Long llmDurationMs) {
+        this.llmDurationMs = llmDurationMs;
+    }
+    
+    public String getLlmMetrics() {
+        return llmMetrics;
+    }
+    
+    public void setLlmMetrics(String llmMetrics) {
+        this.llmMetrics = llmMetrics;
+    }
 }
@@ -0,0 +1,11 @@
+package com.example.exception;
+
+/**
+ * Thrown when a worker writes to a task whose lease was taken over by another claim
+ */
+public class LeaseLostException extends RuntimeException {
+
+    public LeaseLostException(String taskId) {
+        super("任务租约已失效: " + taskId);
+    }
+}
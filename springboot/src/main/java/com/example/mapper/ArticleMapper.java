@@ -28,4 +28,8 @@ public interface ArticleMapper {
     // 新增方法：查询文件路径
     @Select("SELECT * FROM article_info WHERE title = #{title}")
     Map<String, String> selectFilePathsByTitle(String title);
+
+    // 查询所有论文的pdf、docx与txt路径，用于空闲时补生成docx和全文
+    @Select("SELECT pathpdf, pathdocx, pathtxt FROM article_info WHERE pathpdf IS NOT NULL ORDER BY id DESC")
+    List<Map<String, String>> selectDocumentPaths();
 }
\ No newline at end of file
@@ -3,33 +3,72 @@ package com.example.mapper;
 import com.example.entity.ProcessingStatus;
 import org.apache.ibatis.annotations.*;
 
+import java.util.List;
+import java.util.Map;
+
 @Mapper
 public interface ProcessingStatusMapper {
     
-    @Insert("INSERT INTO processing_status (task_id, file_name, status, progress, current_step, file_path, created_time, updated_time) " +
-            "VALUES (#{taskId}, #{fileName}, #{status}, #{progress}, #{currentStep}, #{filePath}, NOW(), NOW())")
-    @Options(useGeneratedKeys = true, keyProperty = "id")
-    int insert(ProcessingStatus status);
+    String SELECT_COLUMNS = "id, task_id, file_name, status, progress, current_step, error_message, " +
+            "extracted_title, extracted_authors, extracted_institution, extracted_year, extracted_source, " +
+            "extracted_keywords, extracted_doi, extracted_abstract, extracted_summary, " +
+            "extracted_custom_concept1, extracted_custom_concept2, extracted_custom_concept3, " +
+            "file_path, created_time, updated_time, completed_time, " +
+            "stage, lease_owner, lease_token, lease_expires_time, heartbeat_time, attempts, content_hash, batch_id, " +
+            "llm_calls, llm_prompt_tokens, llm_output_tokens, llm_duration_ms, llm_metrics";
     
-    @Update("UPDATE processing_status SET status=#{status}, progress=#{progress}, current_step=#{currentStep}, " +
+    String UPDATE_COLUMNS = "status=#{status}, progress=#{progress}, current_step=#{currentStep}, " +
             "error_message=#{errorMessage}, extracted_title=#{extractedTitle}, extracted_authors=#{extractedAuthors}, " +
             "extracted_institution=#{extractedInstitution}, extracted_year=#{extractedYear}, extracted_source=#{extractedSource}, " +
             "extracted_keywords=#{extractedKeywords}, extracted_doi=#{extractedDoi}, extracted_abstract=#{extractedAbstract}, " +
             "extracted_summary=#{extractedSummary}, extracted_custom_concept1=#{extractedCustomConcept1}, " +
             "extracted_custom_concept2=#{extractedCustomConcept2}, extracted_custom_concept3=#{extractedCustomConcept3}, " +
-            "updated_time=NOW() WHERE task_id=#{taskId}")
+            "stage=#{stage}, llm_calls=#{llmCalls}, llm_prompt_tokens=#{llmPromptTokens}, " +
+            "llm_output_tokens=#{llmOutputTokens}, llm_duration_ms=#{llmDurationMs}, llm_metrics=#{llmMetrics}, " +
+            "updated_time=NOW()";
+    
+    // QUEUED: batch rows that have not started yet
+    String ACTIVE_STATUSES = "('QUEUED', 'UPLOADING', 'CONVERTING', 'EXTRACTING')";
+    
+    String CLAIMABLE = "status IN " + ACTIVE_STATUSES + " AND (lease_owner IS NULL OR lease_expires_time < NOW())";
+    
+    // Single uploads go ahead of queued batch rows
+    String CLAIM_ORDER = " ORDER BY status='QUEUED', created_time";
+    
+    @Insert("INSERT INTO processing_status (task_id, file_name, status, progress, current_step, file_path, content_hash, created_time, updated_time) " +
+            "VALUES (#{taskId}, #{fileName}, #{status}, #{progress}, #{currentStep}, #{filePath}, #{contentHash}, NOW(), NOW())")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insert(ProcessingStatus status);
+    
+    @Insert("<script>INSERT INTO processing_status (task_id, file_name, status, progress, current_step, file_path, " +
+            "content_hash, batch_id, created_time, updated_time) VALUES " +
+            "<foreach collection='statuses' item='s' separator=','>(#{s.taskId}, #{s.fileName}, #{s.status}, #{s.progress}, " +
+            "#{s.currentStep}, #{s.filePath}, #{s.contentHash}, #{s.batchId}, NOW(), NOW())</foreach></script>")
+    int insertBatch(@Param("statuses") List<ProcessingStatus> statuses);
+    
+    @Update("UPDATE processing_status SET " + UPDATE_COLUMNS + " WHERE task_id=#{taskId}")
     int updateByTaskId(ProcessingStatus status);
     
+    /**
+     * Update written by a lease holder; returns 0 if the lease was taken over by another claim (fencing token changed)
+     */
+    @Update("UPDATE processing_status SET " + UPDATE_COLUMNS + " WHERE task_id=#{taskId} AND lease_token=#{leaseToken}")
+    int updateByTaskIdFenced(ProcessingStatus status);
+    
+    /**
+     * Progress text of a running stage; touches nothing else, so parallel stages of one task
+     * never overwrite each other's fields. Fenced like updateByTaskIdFenced when a token is given.
+     */
+    @Update("<script>UPDATE processing_status SET current_step=#{currentStep}, updated_time=NOW() WHERE task_id=#{taskId}" +
+            "<if test='leaseToken != null'> AND lease_token=#{leaseToken}</if></script>")
+    int updateCurrentStep(@Param("taskId") String taskId, @Param("leaseToken") Long leaseToken,
+                          @Param("currentStep") String currentStep);
+    
     @Update("UPDATE processing_status SET completed_time=NOW() WHERE task_id=#{taskId}")
     int markCompleted(String taskId);
     
-    @Select("SELECT id, task_id, file_name, status, progress, current_step, error_message, " +
-            "extracted_title, extracted_authors, extracted_institution, extracted_year, extracted_source, " +
-            "extracted_keywords, extracted_doi, extracted_abstract, extracted_summary, " +
-            "extracted_custom_concept1, extracted_custom_concept2, extracted_custom_concept3, " +
-            "file_path, created_time, updated_time, completed_time " +
-            "FROM processing_status WHERE task_id=#{taskId}")
-    @Results({
+    @Select("SELECT " + SELECT_COLUMNS + " FROM processing_status WHERE task_id=#{taskId}")
+    @Results(id = "processingStatusMap", value = {
         @Result(property = "id", column = "id"),
         @Result(property = "taskId", column = "task_id"),
         @Result(property = "fileName", column = "file_name"),
@@ -52,10 +91,90 @@ public interface ProcessingStatusMapper {
         @Result(property = "filePath", column = "file_path"),
         @Result(property = "createdTime", column = "created_time"),
         @Result(property = "updatedTime", column = "updated_time"),
-        @Result(property = "completedTime", column = "completed_time")
+        @Result(property = "completedTime", column = "completed_time"),
+        @Result(property = "stage", column = "stage"),
+        @Result(property = "leaseOwner", column = "lease_owner"),
+        @Result(property = "leaseToken", column = "lease_token"),
+        @Result(property = "leaseExpiresTime", column = "lease_expires_time"),
+        @Result(property = "heartbeatTime", column = "heartbeat_time"),
+        @Result(property = "attempts", column = "attempts"),
+        @Result(property = "contentHash", column = "content_hash"),
+        @Result(property = "batchId", column = "batch_id"),
+        @Result(property = "llmCalls", column = "llm_calls"),
+        @Result(property = "llmPromptTokens", column = "llm_prompt_tokens"),
+        @Result(property = "llmOutputTokens", column = "llm_output_tokens"),
+        @Result(property = "llmDurationMs", column = "llm_duration_ms"),
+        @Result(property = "llmMetrics", column = "llm_metrics")
     })
     ProcessingStatus selectByTaskId(String taskId);
     
     @Delete("DELETE FROM processing_status WHERE task_id=#{taskId}")
     int deleteByTaskId(String taskId);
+    
+    /**
+     * Claim a queued or stalled task and bump its fencing token;
+     * returns 0 if another node holds a live lease or the task is finished
+     */
+    @Update("UPDATE processing_status SET lease_owner=#{owner}, lease_token=IFNULL(lease_token, 0)+1, " +
+            "lease_expires_time=DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND), heartbeat_time=NOW(), " +
+            "attempts=IFNULL(attempts, 0)+1, updated_time=NOW() " +
+            "WHERE task_id=#{taskId} AND " + CLAIMABLE)
+    int claim(@Param("taskId") String taskId, @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+    
+    /**
+     * Lock claimable rows without waiting on rows other nodes are claiming; must run inside a transaction
+     */
+    @Select("SELECT task_id FROM processing_status WHERE " + CLAIMABLE +
+            CLAIM_ORDER + " LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+    List<String> lockClaimable(@Param("limit") int limit);
+    
+    @Update("<script>UPDATE processing_status SET " +
+            "lease_expires_time=DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND), heartbeat_time=NOW() " +
+            "WHERE lease_owner=#{owner} AND (task_id, lease_token) IN " +
+            "<foreach collection='leases' item='lease' open='(' separator=',' close=')'>(#{lease.taskId}, #{lease.leaseToken})</foreach></script>")
+    int heartbeat(@Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds,
+                  @Param("leases") List<ProcessingStatus> leases);
+    
+    @Update("UPDATE processing_status SET lease_owner=NULL, lease_expires_time=NULL " +
+            "WHERE task_id=#{taskId} AND lease_token=#{leaseToken}")
+    int releaseLease(@Param("taskId") String taskId, @Param("leaseToken") Long leaseToken);
+    
+    /**
+     * Give back a claim whose task never started, without counting it as an attempt
+     */
+    @Update("UPDATE processing_status SET lease_owner=NULL, lease_expires_time=NULL, attempts=GREATEST(IFNULL(attempts, 1)-1, 0) " +
+            "WHERE task_id=#{taskId} AND lease_token=#{leaseToken}")
+    int returnLease(@Param("taskId") String taskId, @Param("leaseToken") Long leaseToken);
+    
+    /**
+     * Drop leases left behind by a previous run of this node
+     */
+    @Update("UPDATE processing_status SET lease_owner=NULL, lease_expires_time=NULL " +
+            "WHERE lease_owner=#{owner} AND status IN " + ACTIVE_STATUSES)
+    int releaseLeasesOf(@Param("owner") String owner);
+    
+    @Select("SELECT " + SELECT_COLUMNS + " FROM processing_status WHERE " + CLAIMABLE +
+            CLAIM_ORDER + " LIMIT #{limit}")
+    @ResultMap("processingStatusMap")
+    List<ProcessingStatus> selectRecoverable(@Param("limit") int limit);
+    
+    @Update("UPDATE processing_status SET status='FAILED', progress=0, current_step='处理失败', " +
+            "error_message='处理多次中断，已停止重试', lease_owner=NULL, lease_expires_time=NULL, updated_time=NOW() " +
+            "WHERE " + CLAIMABLE + " AND attempts >= #{maxAttempts}")
+    int failExhausted(@Param("maxAttempts") int maxAttempts);
+    
+    @Select("SELECT COUNT(*) FROM processing_status WHERE status<>'QUEUED' AND " + CLAIMABLE)
+    int countClaimable();
+    
+    /**
+     * Most recent finished extraction of an identical file that can be reused for a new upload
+     */
+    @Select("SELECT " + SELECT_COLUMNS + " FROM processing_status WHERE content_hash=#{contentHash} " +
+            "AND status IN ('PENDING_APPROVAL', 'APPROVED') AND task_id<>#{taskId} ORDER BY id DESC LIMIT 1")
+    @ResultMap("processingStatusMap")
+    ProcessingStatus selectReusableByHash(@Param("contentHash") String contentHash, @Param("taskId") String taskId);
+    
+    @Select("SELECT status, COUNT(*) AS count, SUM(progress) AS progress FROM processing_status " +
+            "WHERE batch_id=#{batchId} GROUP BY status")
+    List<Map<String, Object>> countByStatusForBatch(@Param("batchId") String batchId);
 }
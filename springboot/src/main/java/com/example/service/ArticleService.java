@@ -13,5 +13,6 @@ public interface ArticleService {
     PageInfo<ArticleInfo> selectPage(ArticleInfo articleInfo, Integer pageNum, Integer pageSize);
     void saveArticle(ArticleInfo articleInfo);
     Map<String, String> getFilePathsByTitle(String title);
+    List<Map<String, String>> getDocumentPaths();
 
 }
\ No newline at end of file
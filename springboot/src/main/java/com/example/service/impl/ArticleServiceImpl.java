@@ -47,4 +47,9 @@ public class ArticleServiceImpl implements ArticleService {
     public Map<String, String> getFilePathsByTitle(String title) {
         return articleMapper.selectFilePathsByTitle(title);
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<Map<String, String>> getDocumentPaths() {
+        return articleMapper.selectDocumentPaths();
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import com.example.entity.ProcessingStatus;
+import com.example.utils.AfterUpload;
+import com.example.utils.Config;
+import com.example.utils.UploadUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Batch upload: many papers, or ZIP archives of papers, in one request.
+ * All task rows are inserted together under one batch id. Whatever the ingest queue cannot take right away
+ * stays persisted in processing_status as QUEUED and is picked up by the recovery sweep (or the pollers)
+ * as the queue drains, after single uploads waiting at the same time.
+ */
+@Service
+public class BatchIngestService {
+
+    private static final String[] FINISHED_STATUSES = {"PENDING_APPROVAL", "APPROVED", "FAILED", "REJECTED"};
+
+    @Resource
+    private ProcessingStatusService processingStatusService;
+
+    @Resource
+    private IngestQueueService ingestQueueService;
+
+    @Autowired
+    private AfterUpload afterUpload;
+
+    /**
+     * Save all papers of a batch and hand them to the ingest queue
+     * @param files .pdf/.caj files and/or .zip archives containing them
+     * @return batch id and counts
+     * @throws IllegalArgumentException if the request contains no paper
+     */
+    public Map<String, Object> submit(MultipartFile[] files) throws IOException {
+        String batchId = UUID.randomUUID().toString();
+        List<ProcessingStatus> statuses = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                String name = file.getOriginalFilename();
+                if ("zip".equalsIgnoreCase(FileUtil.extName(name))) {
+                    unpack(file, batchId, statuses, skipped);
+                } else if (isPaper(name)) {
+                    checkLimit(statuses);
+                    try (InputStream in = file.getInputStream()) {
+                        statuses.add(save(in, name, batchId));
+                    }
+                } else {
+                    skipped.add(name);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Nothing was queued yet, drop the files saved so far
+            for (ProcessingStatus status : statuses) {
+                FileUtil.del(status.getFilePath());
+            }
+            throw e;
+        }
+        if (statuses.isEmpty()) {
+            throw new IllegalArgumentException("没有可处理的文件（支持 .pdf/.caj 及其 .zip 压缩包）");
+        }
+
+        // Reuse is decided before the insert, so a reused row never shows up as claimable work
+        List<ProcessingStatus> reused = new ArrayList<>();
+        for (ProcessingStatus status : statuses) {
+            ProcessingStatus previous = processingStatusService.findReusable(status.getContentHash(), status.getTaskId());
+            if (previous != null && afterUpload.reuseExtraction(status, previous)) {
+                reused.add(status);
+            }
+        }
+        processingStatusService.createStatuses(statuses, reused);
+
+        int queued = 0;
+        int deferred = 0;
+        boolean queueFull = false;
+        for (ProcessingStatus status : statuses) {
+            if (!"QUEUED".equals(status.getStatus())) {
+                continue;
+            }
+            if (queueFull) {
+                deferred++;
+                continue;
+            }
+            try {
+                ingestQueueService.enqueue(status.getTaskId(), status.getFilePath());
+                queued++;
+            } catch (RejectedExecutionException e) {
+                // The rows are the queue; the recovery sweep feeds the rest in as capacity frees up
+                queueFull = true;
+                deferred++;
+            }
+        }
+        System.out.println("批量上传 " + batchId + ": " + statuses.size() + " 个文件，复用 " + reused.size()
+                + "，已排队 " + queued + "，稍后处理 " + deferred + "，跳过 " + skipped.size());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("batchId", batchId);
+        result.put("total", statuses.size());
+        result.put("reused", reused.size());
+        result.put("queued", queued);
+        result.put("deferred", deferred);
+        result.put("skipped", skipped);
+        return result;
+    }
+
+    /**
+     * Aggregate progress of a batch
+     * @return null if the batch does not exist
+     */
+    public Map<String, Object> getProgress(String batchId) {
+        List<Map<String, Object>> rows = processingStatusService.countByStatusForBatch(batchId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        long total = 0;
+        long progressSum = 0;
+        for (Map<String, Object> row : rows) {
+            long count = ((Number) row.get("count")).longValue();
+            byStatus.put((String) row.get("status"), count);
+            total += count;
+            progressSum += row.get("progress") == null ? 0 : ((Number) row.get("progress")).longValue();
+        }
+        long finished = 0;
+        for (String status : FINISHED_STATUSES) {
+            finished += byStatus.getOrDefault(status, 0L);
+        }
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("batchId", batchId);
+        progress.put("total", total);
+        progress.put("finished", finished);
+        progress.put("progress", total == 0 ? 0 : progressSum / total);
+        progress.put("statusCounts", byStatus);
+        return progress;
+    }
+
+    /**
+     * Stream the entries of a ZIP archive to disk one by one, without unpacking it first
+     */
+    private void unpack(MultipartFile archive, String batchId, List<ProcessingStatus> statuses,
+                        List<String> skipped) throws IOException {
+        // Entries without the UTF-8 flag (e.g. archives made on Chinese Windows) use BATCH_ZIP_CHARSET
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream(), Charset.forName(Config.BATCH_ZIP_CHARSET))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = FileUtil.getName(entry.getName());
+                if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/")) {
+                    continue;
+                }
+                if (!isPaper(name)) {
+                    skipped.add(entry.getName());
+                    continue;
+                }
+                checkLimit(statuses);
+                statuses.add(save(zip, name, batchId));
+            }
+        }
+    }
+
+    private ProcessingStatus save(InputStream in, String originalName, String batchId) throws IOException {
+        String fileName = "paper_" + UUID.randomUUID() + "." + FileUtil.extName(originalName).toLowerCase();
+        UploadUtil.SavedFile saved = UploadUtil.save(in, new File(Config.UPLOAD_PATH, fileName));
+
+        ProcessingStatus status = new ProcessingStatus();
+        status.setTaskId(UUID.randomUUID().toString());
+        status.setFileName(originalName);
+        // Batch rows wait as QUEUED: claimable, but not counted against the capacity for single uploads
+        status.setStatus("QUEUED");
+        status.setProgress(10);
+        status.setCurrentStep("文件上传成功，等待处理");
+        status.setFilePath(saved.getFile().getPath());
+        status.setContentHash(saved.getSha256());
+        status.setBatchId(batchId);
+        return status;
+    }
+
+    private boolean isPaper(String name) {
+        String ext = FileUtil.extName(name);
+        return "pdf".equalsIgnoreCase(ext) || "caj".equalsIgnoreCase(ext);
+    }
+
+    private void checkLimit(List<ProcessingStatus> statuses) {
+        if (statuses.size() >= Config.BATCH_MAX_FILES) {
+            throw new IllegalArgumentException("单次批量上传最多 " + Config.BATCH_MAX_FILES + " 个文件");
+        }
+    }
+}
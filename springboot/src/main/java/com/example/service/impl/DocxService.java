@@ -0,0 +1,281 @@
+package com.example.service.impl;
+
+import com.example.service.ArticleService;
+import com.example.utils.Config;
+import com.example.utils.PaperConverter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-demand docx generation.
+ * The docx is produced on first download instead of during ingest, and kept on disk afterwards.
+ * Concurrent requests for the same document share one conversion. While the ingest pipeline is idle,
+ * missing docx files of stored articles are generated in the background.
+ * The full .txt is recovered the same way: it is extracted outside the pipeline, so a restart can
+ * leave a stored article without it; it is then extracted again on download or by the idle job.
+ */
+@Service
+public class DocxService {
+
+    @Resource
+    private ArticleService articleService;
+
+    @Resource
+    private TaskService taskService;
+
+    // Conversions in progress, by target path
+    private final Map<String, CompletableFuture<File>> inProgress = new ConcurrentHashMap<>();
+    // Last failure of a background conversion, reported to the next download of that file
+    private final Map<String, IOException> failures = new ConcurrentHashMap<>();
+    // Documents the idle job failed to convert; not retried until restart (a download still retries)
+    private final Set<String> idleFailures = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            Config.DOCX_CONCURRENCY, Config.DOCX_CONCURRENCY, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Config.INGEST_QUEUE_CAPACITY),
+            r -> {
+                Thread thread = new Thread(r, "docx-converter-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+    // Text extraction is much faster than docx conversion, keep it from queueing behind one
+    private final ThreadPoolExecutor textExecutor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Config.INGEST_QUEUE_CAPACITY),
+            r -> {
+                Thread thread = new Thread(r, "fulltext-regenerator");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "docx-idle-converter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Return the docx, generating it first if it does not exist yet
+     * @throws IOException if the conversion failed or did not finish in PDF2DOCX_TIMEOUT_MINUTES
+     */
+    public File getDocx(File pdf, File docx) throws IOException, InterruptedException {
+        return await(convert(pdf, docx), docx);
+    }
+
+    /**
+     * Return the full .txt, extracting it again if it is missing
+     * @throws IOException if the extraction failed or did not finish in PDF2DOCX_TIMEOUT_MINUTES
+     */
+    public File getFullText(File pdf, File txt) throws IOException, InterruptedException {
+        return await(extractText(pdf, txt), txt);
+    }
+
+    /**
+     * Return the docx if it exists, otherwise start generating it (or keep the running conversion)
+     * without waiting for it, so a download never holds a request thread for the whole conversion.
+     * A failed conversion is reported to exactly one download and then forgotten: the call that
+     * receives the error does not start a new conversion, the next call does.
+     * @return null while the docx is being generated
+     * @throws IOException if the last conversion of this docx failed
+     * @throws RejectedExecutionException if the conversion queue is full
+     */
+    public File getDocxIfReady(File pdf, File docx) throws IOException {
+        takeFailure(docx);
+        return poll(convert(pdf, docx), docx);
+    }
+
+    /**
+     * Return the full .txt if it exists, otherwise start extracting it without waiting.
+     * Failures are reported once, as in {@link #getDocxIfReady}
+     */
+    public File getFullTextIfReady(File pdf, File txt) throws IOException {
+        takeFailure(txt);
+        return poll(extractText(pdf, txt), txt);
+    }
+
+    /**
+     * Start generating the docx, or join the conversion already running for it
+     */
+    public CompletableFuture<File> convert(File pdf, File docx) {
+        return generate(docx, executor, () -> PaperConverter.convertDocx(pdf, docx));
+    }
+
+    /**
+     * Start extracting the full .txt, or join the extraction already running for it
+     */
+    public CompletableFuture<File> extractText(File pdf, File txt) {
+        return generate(txt, textExecutor, () -> PaperConverter.extractText(pdf, PaperConverter.outputBaseOf(txt)));
+    }
+
+    // Must run before convert()/extractText(), otherwise they would already have started the retry
+    private void takeFailure(File target) throws IOException {
+        IOException failure = failures.remove(target.getAbsolutePath());
+        if (failure != null && !target.isFile()) {
+            rethrow(failure);
+        }
+    }
+
+    private File poll(CompletableFuture<File> future, File target) throws IOException {
+        if (!future.isDone()) {
+            return null;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // Reported here, so the next call retries instead of seeing the same failure again
+            failures.remove(target.getAbsolutePath());
+            return rethrow(e.getCause());
+        }
+    }
+
+    private static File rethrow(Throwable cause) throws IOException {
+        if (cause instanceof RejectedExecutionException) {
+            throw (RejectedExecutionException) cause;
+        }
+        throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+    }
+
+    private File await(CompletableFuture<File> future, File target) throws IOException, InterruptedException {
+        try {
+            return future.get(Config.PDF2DOCX_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new IOException("文件生成超时: " + target.getName());
+        }
+    }
+
+    private CompletableFuture<File> generate(File target, ThreadPoolExecutor executor, Callable<File> conversion) {
+        String key = target.getAbsolutePath();
+        if (target.isFile()) {
+            failures.remove(key);
+            return CompletableFuture.completedFuture(target);
+        }
+        CompletableFuture<File> future = new CompletableFuture<>();
+        CompletableFuture<File> running = inProgress.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(conversion.call());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(e);
+                } catch (Exception e) {
+                    failures.put(key, e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e));
+                    future.completeExceptionally(e);
+                } finally {
+                    inProgress.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inProgress.remove(key, future);
+            future.completeExceptionally(new RejectedExecutionException("文件生成队列已满，请稍后重试"));
+        }
+        return future;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (Config.DOCX_IDLE_CONVERSION) {
+            scheduler.scheduleWithFixedDelay(this::convertMissingWhileIdle,
+                    Config.DOCX_IDLE_SCAN_SECONDS, Config.DOCX_IDLE_SCAN_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Generate missing .txt and docx files one at a time, stopping as soon as new uploads arrive
+     */
+    private void convertMissingWhileIdle() {
+        try {
+            if (!taskService.isIdle()) {
+                return;
+            }
+            List<Map<String, String>> documents = articleService.getDocumentPaths();
+            int extracted = 0;
+            int converted = 0;
+            for (Map<String, String> document : documents) {
+                File pdf = new File(document.get("pathpdf"));
+                if (!pdf.isFile()) {
+                    continue;
+                }
+                File txt = document.get("pathtxt") != null ? new File(document.get("pathtxt")) : null;
+                if (needsIdleRun(txt)) {
+                    if (!taskService.isIdle()) {
+                        break;
+                    }
+                    try {
+                        getFullText(pdf, txt);
+                        extracted++;
+                    } catch (IOException e) {
+                        idleFailures.add(txt.getAbsolutePath());
+                        System.err.println("空闲时提取全文失败: " + pdf.getName() + " " + e.getMessage());
+                    }
+                }
+                File docx = document.get("pathdocx") != null ? new File(document.get("pathdocx")) : null;
+                if (needsIdleRun(docx)) {
+                    if (!taskService.isIdle()) {
+                        break;
+                    }
+                    try {
+                        getDocx(pdf, docx);
+                        converted++;
+                    } catch (IOException e) {
+                        idleFailures.add(docx.getAbsolutePath());
+                        System.err.println("空闲时生成docx失败: " + pdf.getName() + " " + e.getMessage());
+                    }
+                }
+            }
+            if (extracted > 0) {
+                System.out.println("空闲时补提取全文: " + extracted + " 个");
+            }
+            if (converted > 0) {
+                System.out.println("空闲时生成docx: " + converted + " 个");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("空闲docx扫描失败: " + e.getMessage());
+        }
+    }
+
+    private boolean needsIdleRun(File target) {
+        return target != null && !target.isFile() && !idleFailures.contains(target.getAbsolutePath());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        textExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.service.impl;
+
+import com.example.entity.ProcessingStatus;
+import com.example.utils.Config;
+import com.example.utils.IngestJob;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable ingest queue backed by processing_status.
+ * Every unfinished row is a queue entry; a node works on a task only while it holds
+ * the lease on that row, and keeps the lease alive with heartbeats. Rows whose lease
+ * expired (e.g. the JVM was restarted) are picked up again by the recovery sweep.
+ * In distributed mode every worker node polls for rows itself (SELECT ... FOR UPDATE SKIP LOCKED),
+ * and the fencing token of the claim guards every write the worker makes.
+ */
+@Service
+public class IngestQueueService {
+
+    @Resource
+    private ProcessingStatusService processingStatusService;
+
+    @Resource
+    private TaskService taskService;
+
+    // Tasks submitted to the local pipeline and not finished yet
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // Leases this node currently holds, by task id
+    private final Map<String, ProcessingStatus> running = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ingest-queue-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Hand a persisted task to the workers
+     * @throws RejectedExecutionException if the local queue is full
+     */
+    public void enqueue(String taskId, String filePath) {
+        if (Config.INGEST_DISTRIBUTED) {
+            // The row is the queue entry; let this node try to pick it up right away
+            if (Config.INGEST_WORKER_ENABLED) {
+                scheduler.execute(this::poll);
+            }
+            return;
+        }
+        if (!inFlight.add(taskId)) {
+            return;
+        }
+        // Claiming counts an attempt; do not spend one on a task the full local queue would reject anyway
+        if (!taskService.hasCapacity()) {
+            inFlight.remove(taskId);
+            throw new RejectedExecutionException("本地处理队列已满: " + taskId);
+        }
+        ProcessingStatus lease;
+        try {
+            lease = processingStatusService.claim(taskId, Config.INGEST_NODE_ID, Config.INGEST_LEASE_SECONDS);
+        } catch (RuntimeException e) {
+            inFlight.remove(taskId);
+            throw e;
+        }
+        if (lease == null) {
+            inFlight.remove(taskId);
+            System.out.println("任务已被其他节点处理或已结束，跳过: " + taskId);
+            return;
+        }
+        submitLeased(lease);
+    }
+
+    /**
+     * Whether a new upload can be accepted without exceeding the queue capacity
+     */
+    public boolean hasCapacity() {
+        if (Config.INGEST_DISTRIBUTED) {
+            return processingStatusService.countClaimable() < Config.INGEST_QUEUE_CAPACITY;
+        }
+        return taskService.hasCapacity();
+    }
+
+    /**
+     * Put a leased task into the pipeline; the lease is released when the job leaves the last stage or fails
+     * @throws RejectedExecutionException if the pipeline entry queue is full (the lease and its attempt are given back first)
+     */
+    private void submitLeased(ProcessingStatus lease) {
+        String taskId = lease.getTaskId();
+        running.put(taskId, lease);
+        inFlight.add(taskId);
+        IngestJob job = new IngestJob(taskId, lease.getFilePath(), lease.getLeaseToken(), () -> {
+            running.remove(taskId);
+            processingStatusService.releaseLease(taskId, lease.getLeaseToken());
+            inFlight.remove(taskId);
+        });
+        try {
+            taskService.submit(job);
+        } catch (RejectedExecutionException e) {
+            // The task never ran, so this claim must not count towards INGEST_MAX_ATTEMPTS
+            running.remove(taskId);
+            processingStatusService.returnLease(taskId, lease.getLeaseToken());
+            inFlight.remove(taskId);
+            throw e;
+        }
+    }
+
+    /**
+     * Distributed mode: claim as many pending rows as this node has idle workers
+     */
+    private synchronized void poll() {
+        try {
+            int idle = taskService.idleWorkers();
+            if (idle <= 0) {
+                return;
+            }
+            List<ProcessingStatus> leases = processingStatusService.claimNext(Config.INGEST_NODE_ID, Config.INGEST_LEASE_SECONDS, idle);
+            for (ProcessingStatus lease : leases) {
+                try {
+                    submitLeased(lease);
+                    System.out.println("节点 " + Config.INGEST_NODE_ID + " 领取任务: " + lease.getTaskId() + " (令牌: " + lease.getLeaseToken() + ")");
+                } catch (RejectedExecutionException e) {
+                    // Lease already given back, another node or the next poll will take it
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("领取任务失败: " + e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            // Leases held by a previous run of this node can never be renewed, drop them right away
+            int released = processingStatusService.releaseLeasesOf(Config.INGEST_NODE_ID);
+            if (released > 0) {
+                System.out.println("释放上次运行遗留的任务租约: " + released + " 个");
+            }
+        } catch (Exception e) {
+            System.err.println("释放遗留租约失败: " + e.getMessage());
+        }
+        recover();
+        scheduler.scheduleWithFixedDelay(this::heartbeat,
+                Config.INGEST_HEARTBEAT_SECONDS, Config.INGEST_HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::recover,
+                Config.INGEST_RECOVERY_INTERVAL_SECONDS, Config.INGEST_RECOVERY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        if (Config.INGEST_DISTRIBUTED && Config.INGEST_WORKER_ENABLED) {
+            scheduler.scheduleWithFixedDelay(this::poll,
+                    0, Config.INGEST_POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            processingStatusService.heartbeat(Config.INGEST_NODE_ID, Config.INGEST_LEASE_SECONDS, new ArrayList<>(running.values()));
+        } catch (Exception e) {
+            System.err.println("任务心跳更新失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fail tasks that were interrupted too often, and (in local mode) re-queue unfinished tasks
+     * without a live lease; they resume from their last completed stage.
+     * In distributed mode the pollers pick up expired leases themselves.
+     */
+    private void recover() {
+        try {
+            int failed = processingStatusService.failExhausted(Config.INGEST_MAX_ATTEMPTS);
+            if (failed > 0) {
+                System.out.println("超过最大重试次数，标记为失败的任务: " + failed + " 个");
+            }
+            if (Config.INGEST_DISTRIBUTED || !taskService.hasCapacity()) {
+                return;
+            }
+            List<ProcessingStatus> stalled = processingStatusService.findRecoverable(Config.INGEST_QUEUE_CAPACITY);
+            for (ProcessingStatus status : stalled) {
+                if (inFlight.contains(status.getTaskId())) {
+                    continue;
+                }
+                try {
+                    enqueue(status.getTaskId(), status.getFilePath());
+                    System.out.println("恢复中断的任务: " + status.getTaskId() + " (已完成阶段: " + status.getStage() + ")");
+                } catch (RejectedExecutionException e) {
+                    // Local queue is full, the rest stays persisted until the next sweep
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("任务恢复扫描失败: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.service.impl;
+
+import com.example.utils.Config;
+import com.example.utils.bigmodel.OllamaClient;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the Ollama model loaded.
+ * The model is loaded once at startup so the first paper does not pay for it, every chat request carries
+ * OLLAMA_KEEP_ALIVE, and while the ingest pipeline has work (e.g. a long OCR with no LLM call) the model is
+ * reloaded periodically so it is not unloaded in between. Each server in OLLAMA_BASE_URLS is handled on its own;
+ * residency is read from Ollama's /api/ps.
+ */
+@Service
+public class OllamaModelService {
+
+    @Resource
+    private TaskService taskService;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ollama-keep-warm");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Per server, by base URL
+    private final Map<String, ModelState> states = new LinkedHashMap<>();
+
+    public OllamaModelService() {
+        for (String baseUrl : OllamaClient.getBaseUrls()) {
+            states.put(baseUrl, new ModelState(baseUrl));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (Config.OLLAMA_WARMUP) {
+            scheduler.execute(this::warmUp);
+        }
+        scheduler.scheduleWithFixedDelay(this::keepWarm, Config.OLLAMA_KEEP_WARM_SECONDS,
+                Config.OLLAMA_KEEP_WARM_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void warmUp() {
+        for (ModelState state : states.values()) {
+            System.out.println("预加载Ollama模型: " + Config.OLLAMA_MODEL + " @ " + state.baseUrl);
+            if (load(state)) {
+                System.out.println("Ollama模型已加载，耗时 " + state.lastLoadMillis + " ms");
+            }
+            refreshResidency(state);
+        }
+    }
+
+    private void keepWarm() {
+        boolean busy = !taskService.isIdle();
+        for (ModelState state : states.values()) {
+            refreshResidency(state);
+            // An idle server may unload the model; only keep it loaded while there is work to do
+            if (busy && (!state.resident || expiresSoon(state))) {
+                load(state);
+                refreshResidency(state);
+            }
+        }
+    }
+
+    /**
+     * A generate request without a prompt only loads the model and resets its keep_alive timer
+     */
+    private boolean load(ModelState state) {
+        JsonObject body = new JsonObject();
+        body.addProperty("model", Config.OLLAMA_MODEL);
+        body.addProperty("keep_alive", Config.OLLAMA_KEEP_ALIVE);
+        long start = System.currentTimeMillis();
+        try {
+            OllamaClient.postUncapped(state.baseUrl, "/api/generate", body.toString());
+            state.lastLoadMillis = System.currentTimeMillis() - start;
+            state.lastLoad = System.currentTimeMillis();
+            state.lastError = null;
+            return true;
+        } catch (IOException e) {
+            state.lastError = e.getMessage();
+            System.err.println("加载Ollama模型失败: " + state.baseUrl + " " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void refreshResidency(ModelState state) {
+        try {
+            JsonObject ps = JsonParser.parseString(OllamaClient.get(state.baseUrl, "/api/ps")).getAsJsonObject();
+            boolean found = false;
+            String expires = null;
+            if (ps.has("models")) {
+                for (JsonElement element : ps.getAsJsonArray("models")) {
+                    JsonObject model = element.getAsJsonObject();
+                    if (matchesModel(model, "name") || matchesModel(model, "model")) {
+                        found = true;
+                        expires = model.has("expires_at") ? model.get("expires_at").getAsString() : null;
+                        break;
+                    }
+                }
+            }
+            state.resident = found;
+            state.expiresAt = expires;
+        } catch (IOException | RuntimeException e) {
+            state.resident = false;
+            state.expiresAt = null;
+            state.lastError = e.getMessage();
+        }
+        state.lastCheck = System.currentTimeMillis();
+    }
+
+    private static boolean matchesModel(JsonObject model, String field) {
+        return model.has(field) && Config.OLLAMA_MODEL.equals(model.get(field).getAsString());
+    }
+
+    /**
+     * The model would be unloaded before the next check
+     */
+    private boolean expiresSoon(ModelState state) {
+        String expires = state.expiresAt;
+        if (expires == null) {
+            return true;
+        }
+        try {
+            long remaining = OffsetDateTime.parse(expires).toInstant().toEpochMilli() - System.currentTimeMillis();
+            return remaining < Config.OLLAMA_KEEP_WARM_SECONDS * 2000L;
+        } catch (DateTimeParseException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Readiness: whether the model is loaded on every server, as of the last check
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        List<Map<String, Object>> servers = new ArrayList<>();
+        boolean resident = true;
+        for (ModelState state : states.values()) {
+            resident &= state.resident;
+            servers.add(state.toMap());
+        }
+        status.put("model", Config.OLLAMA_MODEL);
+        status.put("resident", resident);
+        status.put("keepAlive", Config.OLLAMA_KEEP_ALIVE);
+        status.put("servers", servers);
+        return status;
+    }
+
+    private static class ModelState {
+        private final String baseUrl;
+        private volatile boolean resident;
+        private volatile String expiresAt;
+        private volatile long lastCheck;
+        private volatile long lastLoad;
+        private volatile long lastLoadMillis = -1;
+        private volatile String lastError;
+
+        ModelState(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("url", baseUrl);
+            map.put("resident", resident);
+            map.put("expiresAt", expiresAt);
+            map.put("lastCheck", lastCheck);
+            map.put("lastLoad", lastLoad);
+            map.put("lastLoadMillis", lastLoadMillis);
+            map.put("lastError", lastError);
+            return map;
+        }
+    }
+}
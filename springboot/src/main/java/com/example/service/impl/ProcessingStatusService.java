@@ -1,14 +1,22 @@
 package com.example.service.impl;
 
 import com.example.entity.ProcessingStatus;
+import com.example.exception.LeaseLostException;
 import com.example.mapper.ProcessingStatusMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @Service
 public class ProcessingStatusService {
     
+    // Rows per multi-row INSERT
+    private static final int BATCH_INSERT_SIZE = 500;
+    
     @Resource
     private ProcessingStatusMapper processingStatusMapper;
     
@@ -16,6 +24,34 @@ public class ProcessingStatusService {
         processingStatusMapper.insert(status);
     }
     
+    /**
+     * Insert an upload that reuses an earlier extraction, complete with its results.
+     * The row is inserted as PENDING_APPROVAL, never as claimable work.
+     */
+    @Transactional
+    public void createReused(ProcessingStatus status) {
+        processingStatusMapper.insert(status);
+        processingStatusMapper.updateByTaskId(status);
+    }
+    
+    /**
+     * Insert the rows of a batch upload with multi-row INSERTs
+     * @param reused rows among them that reuse an earlier extraction; their results are written in the same transaction
+     */
+    @Transactional
+    public void createStatuses(List<ProcessingStatus> statuses, List<ProcessingStatus> reused) {
+        for (int from = 0; from < statuses.size(); from += BATCH_INSERT_SIZE) {
+            processingStatusMapper.insertBatch(statuses.subList(from, Math.min(from + BATCH_INSERT_SIZE, statuses.size())));
+        }
+        for (ProcessingStatus status : reused) {
+            processingStatusMapper.updateByTaskId(status);
+        }
+    }
+    
+    public List<Map<String, Object>> countByStatusForBatch(String batchId) {
+        return processingStatusMapper.countByStatusForBatch(batchId);
+    }
+    
     public void updateStatus(ProcessingStatus status) {
         processingStatusMapper.updateByTaskId(status);
     }
@@ -31,4 +67,102 @@ public class ProcessingStatusService {
     public void deleteStatus(String taskId) {
         processingStatusMapper.deleteByTaskId(taskId);
     }
+    
+    /**
+     * Finished extraction of an earlier upload with the same content, or null
+     */
+    public ProcessingStatus findReusable(String contentHash, String taskId) {
+        if (contentHash == null) {
+            return null;
+        }
+        return processingStatusMapper.selectReusableByHash(contentHash, taskId);
+    }
+    
+    /**
+     * Update written by the worker holding the lease on this task
+     * @throws LeaseLostException if another claim took the task over in the meantime
+     */
+    public void updateClaimed(ProcessingStatus status) {
+        if (status.getLeaseToken() == null) {
+            processingStatusMapper.updateByTaskId(status);
+            return;
+        }
+        if (processingStatusMapper.updateByTaskIdFenced(status) == 0) {
+            throw new LeaseLostException(status.getTaskId());
+        }
+    }
+    
+    /**
+     * Replace only the current step, on behalf of the worker holding the lease (if leaseToken is set)
+     * @throws LeaseLostException if another claim took the task over in the meantime
+     */
+    public void updateStepClaimed(String taskId, Long leaseToken, String currentStep) {
+        if (processingStatusMapper.updateCurrentStep(taskId, leaseToken, currentStep) == 0 && leaseToken != null) {
+            throw new LeaseLostException(taskId);
+        }
+    }
+    
+    /**
+     * Claim a task for this node
+     * @return the claimed row with its fencing token, or null if it is finished or leased by another node
+     */
+    public ProcessingStatus claim(String taskId, String owner, int leaseSeconds) {
+        if (processingStatusMapper.claim(taskId, owner, leaseSeconds) == 0) {
+            return null;
+        }
+        return processingStatusMapper.selectByTaskId(taskId);
+    }
+    
+    /**
+     * Claim up to limit pending tasks; rows being claimed by other nodes are skipped instead of waited on
+     */
+    @Transactional
+    public List<ProcessingStatus> claimNext(String owner, int leaseSeconds, int limit) {
+        List<ProcessingStatus> claimed = new ArrayList<>();
+        for (String taskId : processingStatusMapper.lockClaimable(limit)) {
+            if (processingStatusMapper.claim(taskId, owner, leaseSeconds) > 0) {
+                claimed.add(processingStatusMapper.selectByTaskId(taskId));
+            }
+        }
+        return claimed;
+    }
+    
+    public void heartbeat(String owner, int leaseSeconds, List<ProcessingStatus> leases) {
+        if (!leases.isEmpty()) {
+            processingStatusMapper.heartbeat(owner, leaseSeconds, leases);
+        }
+    }
+    
+    public void releaseLease(String taskId, Long leaseToken) {
+        processingStatusMapper.releaseLease(taskId, leaseToken);
+    }
+    
+    /**
+     * Release a claim whose task could not be started; the attempt it counted is taken back
+     */
+    public void returnLease(String taskId, Long leaseToken) {
+        processingStatusMapper.returnLease(taskId, leaseToken);
+    }
+    
+    public int releaseLeasesOf(String owner) {
+        return processingStatusMapper.releaseLeasesOf(owner);
+    }
+    
+    /**
+     * Unfinished tasks that nobody holds a live lease on, oldest first
+     */
+    public List<ProcessingStatus> findRecoverable(int limit) {
+        return processingStatusMapper.selectRecoverable(limit);
+    }
+    
+    public int failExhausted(int maxAttempts) {
+        return processingStatusMapper.failExhausted(maxAttempts);
+    }
+    
+    /**
+     * Single uploads waiting for a worker; queued batch rows are not counted
+     */
+    public int countClaimable() {
+        return processingStatusMapper.countClaimable();
+    }
 }
@@ -1,30 +1,325 @@
 package com.example.service.impl;
 
-import org.springframework.scheduling.annotation.Async;
+import com.example.utils.AfterUpload;
+import com.example.utils.Config;
+import com.example.utils.IngestJob;
+import com.example.utils.bigmodel.LlmMetrics;
+import com.example.utils.bigmodel.LlmResponseCache;
+import com.example.utils.bigmodel.OllamaClient;
+import com.example.utils.pyworker.PythonWorkerPool;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 分阶段处理流水线：转换 -> 文本提取 -> (元数据 | 自定义概念) -> 保存。
+ * 每个阶段有独立线程池，阶段之间用有界队列交接，下游队列满时上游阻塞等待，
+ * 这样后面论文的转换可以和前面论文的大模型调用同时进行。
+ * 元数据和自定义概念只依赖文本摘录，两者并行调用大模型，都完成后才进入保存阶段。
+ */
 @Service
 public class TaskService {
 
-    // 使用单线程池确保任务按顺序执行
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    @Autowired
+    private AfterUpload afterUpload;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    // 元数据与自定义概念两个阶段共享Ollama并发预算
+    private final Semaphore llmPermits = new Semaphore(Config.INGEST_LLM_CONCURRENCY, true);
+
+    // 全文提取在流水线之外进行，元数据提取不必等待整本论文提取完；队列满时由文本阶段线程自己执行
+    private final AtomicInteger fullTextThreads = new AtomicInteger();
+    private final ThreadPoolExecutor fullTextExecutor = new ThreadPoolExecutor(
+            Config.INGEST_CONVERT_CONCURRENCY, Config.INGEST_CONVERT_CONCURRENCY, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Config.INGEST_QUEUE_CAPACITY),
+            r -> {
+                Thread thread = new Thread(r, "ingest-fulltext-" + fullTextThreads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // 入口阶段的队列就是上传等待队列：满时拒绝新任务，由上传接口返回429
+    private final Stage convertStage = new Stage("convert", Config.INGEST_CONVERT_CONCURRENCY,
+            Config.INGEST_QUEUE_CAPACITY, job -> afterUpload.convertStage(job));
+    private final Stage textStage = new Stage("text", Config.INGEST_CONVERT_CONCURRENCY,
+            Config.INGEST_STAGE_QUEUE_CAPACITY, job -> {
+                afterUpload.textStage(job);
+                if (job.isFullTextPending()) {
+                    fullTextExecutor.execute(() -> afterUpload.fullTextStage(job));
+                }
+            });
+    private final Stage metadataStage = new Stage("metadata", Config.INGEST_LLM_CONCURRENCY,
+            Config.INGEST_STAGE_QUEUE_CAPACITY, job -> withLlmPermit(() -> afterUpload.metadataStage(job)));
+    private final Stage conceptStage = new Stage("concepts", Config.INGEST_LLM_CONCURRENCY,
+            Config.INGEST_STAGE_QUEUE_CAPACITY, job -> withLlmPermit(() -> afterUpload.conceptStage(job)));
+    private final Stage persistStage = new Stage("persist", 1,
+            Config.INGEST_STAGE_QUEUE_CAPACITY, job -> afterUpload.persistStage(job));
+
+    private final List<Stage> stages = Arrays.asList(convertStage, textStage, metadataStage, conceptStage, persistStage);
+
+    public TaskService() {
+        convertStage.next = Collections.singletonList(textStage);
+        textStage.next = Arrays.asList(metadataStage, conceptStage);
+        metadataStage.next = Collections.singletonList(persistStage);
+        conceptStage.next = Collections.singletonList(persistStage);
+        for (Stage stage : stages) {
+            for (Stage next : stage.next) {
+                next.inputs++;
+            }
+        }
+    }
+
+    /**
+     * 提交处理任务到流水线入口
+     * @param job 待处理的论文
+     * @throws RejectedExecutionException 队列已满
+     */
+    public void submit(IngestJob job) {
+        convertStage.executor.execute(new StageTask(convertStage, job));
+    }
+
+    /**
+     * 入口队列是否还有空位（提前判断用，最终以submit是否抛出异常为准）
+     */
+    public boolean hasCapacity() {
+        return convertStage.executor.getQueue().remainingCapacity() > 0;
+    }
+
+    /**
+     * 入口阶段可以立即开始工作的空闲线程数
+     */
+    public int idleWorkers() {
+        return Math.max(0, convertStage.threads - convertStage.busy.get() - convertStage.executor.getQueue().size());
+    }
+
+    /**
+     * 流水线中没有任何待处理或正在处理的论文
+     */
+    public boolean isIdle() {
+        for (Stage stage : stages) {
+            if (stage.busy.get() > 0 || !stage.executor.getQueue().isEmpty()) {
+                return false;
+            }
+        }
+        return fullTextExecutor.getActiveCount() == 0 && fullTextExecutor.getQueue().isEmpty();
+    }
+
+    private void withLlmPermit(StageAction action) throws Exception {
+        llmPermits.acquire();
+        try {
+            action.run();
+        } finally {
+            llmPermits.release();
+        }
+    }
+
+    /**
+     * 获取任务在入口等待队列中的位置
+     * @return 从1开始的位置；0表示已开始处理或不在队列中
+     */
+    public int getQueuePosition(String taskId) {
+        int position = 0;
+        for (Runnable queued : convertStage.executor.getQueue()) {
+            position++;
+            if (queued instanceof StageTask && taskId.equals(((StageTask) queued).job.getTaskId())) {
+                return position;
+            }
+        }
+        return 0;
+    }
 
     /**
-     * 异步执行任务
-     * @param task 要执行的任务
+     * 流水线运行状态，包括每个阶段的占用、耗时与吞吐量
      */
-    @Async
-    public void executeAsync(Runnable task) {
-        executor.submit(task);
+    public Map<String, Object> getStats() {
+        int activeWorkers = 0;
+        List<Map<String, Object>> stageStats = new ArrayList<>();
+        for (Stage stage : stages) {
+            activeWorkers += stage.busy.get();
+            stageStats.add(stage.getStats());
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", convertStage.executor.getQueue().size());
+        stats.put("queueCapacity", Config.INGEST_QUEUE_CAPACITY);
+        stats.put("activeWorkers", activeWorkers);
+        stats.put("llmInUse", Config.INGEST_LLM_CONCURRENCY - llmPermits.availablePermits());
+        stats.put("llmLimit", Config.INGEST_LLM_CONCURRENCY);
+        stats.put("completedTasks", persistStage.completed.get());
+        stats.put("stages", stageStats);
+        Map<String, Object> fullText = new LinkedHashMap<>();
+        fullText.put("busy", fullTextExecutor.getActiveCount());
+        fullText.put("queued", fullTextExecutor.getQueue().size());
+        fullText.put("completed", fullTextExecutor.getCompletedTaskCount());
+        stats.put("fullText", fullText);
+        stats.put("pythonWorkers", PythonWorkerPool.getStats());
+        stats.put("ollama", OllamaClient.getStats());
+        stats.put("llmCache", LlmResponseCache.getStats());
+        stats.put("llm", LlmMetrics.getStats());
+        return stats;
     }
 
     /**
-     * 关闭线程池（可选，在应用关闭时调用）
+     * 关闭线程池（在应用关闭时调用）
      */
+    @PreDestroy
     public void shutdown() {
-        executor.shutdown();
+        for (Stage stage : stages) {
+            stage.executor.shutdownNow();
+        }
+        fullTextExecutor.shutdownNow();
+    }
+
+    private interface StageAction {
+        void run() throws Exception;
+    }
+
+    private interface JobAction {
+        void run(IngestJob job) throws Exception;
+    }
+
+    /**
+     * 流水线中的一个阶段
+     */
+    private class Stage {
+        private final String name;
+        private final int threads;
+        private final int queueCapacity;
+        private final JobAction action;
+        private final ThreadPoolExecutor executor;
+        private List<Stage> next = Collections.emptyList();
+        private int inputs;                              // 上游阶段数，多于1个时为并行分支的汇合点
+
+        private final AtomicInteger busy = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+
+        Stage(String name, int threads, int queueCapacity, JobAction action) {
+            this.name = name;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+            this.action = action;
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    r -> {
+                        Thread thread = new Thread(r, "ingest-" + name + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            // 交接时直接放入队列，工作线程需要提前启动
+            this.executor.prestartAllCoreThreads();
+        }
+
+        /**
+         * 接收上一阶段交来的任务，队列满时阻塞上一阶段的线程。
+         * 汇合阶段等所有并行分支都到达后才开始处理，任一分支失败则整个任务失败
+         */
+        void handOff(IngestJob job) throws InterruptedException {
+            if (inputs > 1) {
+                if (!job.joinBranch()) {
+                    return;
+                }
+                if (job.getBranchFailure() != null) {
+                    afterUpload.failTask(job, job.getBranchFailure());
+                    job.finish();
+                    return;
+                }
+            }
+            executor.getQueue().put(new StageTask(this, job));
+        }
+
+        void process(IngestJob job) {
+            long start = System.currentTimeMillis();
+            busy.incrementAndGet();
+            try {
+                action.run(job);
+                completed.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                if (!isBranch()) {
+                    afterUpload.failTask(job, e);
+                    job.finish();
+                    return;
+                }
+                // 其他分支可能仍在处理，失败留到汇合时统一处理
+                job.failBranch(e);
+            } finally {
+                busy.decrementAndGet();
+                totalMillis.addAndGet(System.currentTimeMillis() - start);
+            }
+
+            if (next.isEmpty()) {
+                job.finish();
+                return;
+            }
+            if (next.size() > 1) {
+                job.fork(next.size());
+            }
+            try {
+                for (Stage stage : next) {
+                    stage.handOff(job);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                afterUpload.failTask(job, e);
+                job.finish();
+            }
+        }
+
+        /**
+         * 是否为并行分支之一（下游是汇合阶段）
+         */
+        private boolean isBranch() {
+            return next.size() == 1 && next.get(0).inputs > 1;
+        }
+
+        Map<String, Object> getStats() {
+            long done = completed.get() + failed.get();
+            double minutes = Math.max(1, System.currentTimeMillis() - startedAt) / 60000.0;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("name", name);
+            stats.put("threads", threads);
+            stats.put("busy", busy.get());
+            stats.put("queued", executor.getQueue().size());
+            stats.put("queueCapacity", queueCapacity);
+            stats.put("completed", completed.get());
+            stats.put("failed", failed.get());
+            stats.put("avgMillis", done == 0 ? 0 : totalMillis.get() / done);
+            stats.put("throughputPerMinute", Math.round(completed.get() / minutes * 100) / 100.0);
+            return stats;
+        }
+    }
+
+    private static class StageTask implements Runnable {
+        private final Stage stage;
+        private final IngestJob job;
+
+        StageTask(Stage stage, IngestJob job) {
+            this.stage = stage;
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            stage.process(job);
+        }
     }
-}
\ No newline at end of file
+}
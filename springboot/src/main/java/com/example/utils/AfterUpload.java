@@ -3,26 +3,32 @@ package com.example.utils;
 import com.example.entity.ArticleInfo;
 import com.example.entity.CustomConcept;
 import com.example.entity.ProcessingStatus;
+import com.example.exception.LeaseLostException;
 import com.example.service.ArticleService;
 import com.example.service.impl.CustomConceptService;
 import com.example.service.impl.ProcessingStatusService;
 import com.example.utils.bigmodel.BigModelUtil;
+import com.example.utils.bigmodel.JsonSchemas;
+import com.example.utils.bigmodel.LlmUsage;
+import com.example.utils.bigmodel.PromptBuilder;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
-import static com.example.utils.Caj2pdf.Caj2pdf.runCajToPdf;
 import static com.example.utils.neo4jloader.Neo4jLoader.runNeo4jLoader;
-import static com.example.utils.pdf2docx.Pdf2docx.runPdfToDocx;
-import static com.example.utils.pdf2txt.Pdf2txt.runpdf2txt;
 import static com.example.utils.result2mysql.PaperSummarySaver.saveSummary;
 
 /**
@@ -42,140 +48,444 @@ public class AfterUpload {
     
     private final Gson gson = new Gson();
     
+    // Last completed stage stored in processing_status, so an interrupted task can resume
+    private static final String STAGE_CONVERTED = "CONVERTED";
+    private static final String STAGE_METADATA_EXTRACTED = "METADATA_EXTRACTED";
+    
+    // Minimum interval between token progress writes to processing_status while a response streams in
+    private static final long PROGRESS_REPORT_MILLIS = 2000;
+    
+    // extracted_custom_concept1..3
+    private static final int MAX_CUSTOM_CONCEPTS = 3;
+    
+    // Metadata fields asked from the LLM, with the description shown in the prompt; also the response schema
+    private static final Map<String, String> METADATA_FIELDS = new LinkedHashMap<>();
+    static {
+        METADATA_FIELDS.put("title", "论文标题");
+        METADATA_FIELDS.put("author", "作者1; 作者2; 作者3");
+        METADATA_FIELDS.put("organ", "作者单位");
+        METADATA_FIELDS.put("year", "发表年份(仅数字)");
+        METADATA_FIELDS.put("source", "期刊或会议名称");
+        METADATA_FIELDS.put("keyword", "关键词1; 关键词2; 关键词3");
+        METADATA_FIELDS.put("doi", "DOI编号");
+        METADATA_FIELDS.put("summary", "论文摘要内容");
+    }
+    private static final Pattern YEAR_PATTERN = Pattern.compile("(1[89]|20)\\d{2}");
+    private static final Pattern DOI_PATTERN = Pattern.compile("10\\.\\d{4,9}/\\S+");
+    
     /**
-     * Process paper with status tracking
+     * Stage 1: produce the pdf from the uploaded file (the docx is generated on first download)
      */
-    public void processWithStatus(String taskId, String paperFilePath) {
-        ProcessingStatus status = processingStatusService.getStatus(taskId);
+    public void convertStage(IngestJob job) throws Exception {
+        ProcessingStatus status = processingStatusService.getStatus(job.getTaskId());
+        // Fence every write with the token of our own claim, not whatever token the row carries now:
+        // if another node re-claimed the task in between, the first write fails with LeaseLostException
+        if (job.getLeaseToken() != null) {
+            status.setLeaseToken(job.getLeaseToken());
+        }
+        job.setStatus(status);
+        System.out.println("=== 开始处理论文: " + job.getFilePath() + " ===");
         
-        try {
-            System.out.println("=== 开始处理论文: " + paperFilePath + " ===");
-            
-            // Update status: Converting
-            status.setStatus("CONVERTING");
-            status.setProgress(20);
-            status.setCurrentStep("正在转换文件格式...");
-            processingStatusService.updateStatus(status);
-            
-            // Get file paths
-            String oripath = paperFilePath.split("\\.")[0];
-            String pdfpath = oripath + ".pdf";
-            String txtpath = oripath + ".txt";
-            
-            // Convert formats
-            try {
-                runCajToPdf();
-            } catch (Exception e) {
-                // Ignore caj conversion errors
-            }
-            runPdfToDocx();
-            runpdf2txt();
-            
+        // Update status: Converting
+        status.setStatus("CONVERTING");
+        status.setProgress(20);
+        status.setCurrentStep("正在转换文件格式...");
+        processingStatusService.updateClaimed(status);
+        
+        // Convert only the uploaded file, output next to it with the same base name.
+        // A resumed task skips conversion if it already finished before the interruption.
+        if (isConverted(job)) {
+            System.out.println("文件格式转换已在之前完成，跳过");
+            job.setPdfFile(new File(job.getOutputBase().getPath() + ".pdf"));
+            return;
+        }
+        job.setPdfFile(PaperConverter.convertToPdf(new File(job.getFilePath()), job.getOutputBase()));
+    }
+    
+    /**
+     * Stage 2: extract the first pages of the pdf, just enough text for the LLM.
+     * The full .txt is produced afterwards by {@link #fullTextStage}, outside the pipeline.
+     */
+    public void textStage(IngestJob job) throws Exception {
+        ProcessingStatus status = job.getStatus();
+        File txtFile = new File(job.getOutputBase().getPath() + ".txt");
+        job.setTxtFile(txtFile);
+        
+        // The first pages usually contain all metadata, stop extracting once the budget is reached.
+        // Always taken from the pdf: the .txt has its line breaks removed, which the prompt fitting needs.
+        String metadataText = PaperConverter.extractTextPrefix(job.getPdfFile(), Config.METADATA_TEXT_CHARS);
+        // The full .txt may also be missing on a resumed task if the restart hit its extraction
+        job.setFullTextPending(!txtFile.isFile());
+        if (status.getStage() == null) {
+            status.setStage(STAGE_CONVERTED);
+            processingStatusService.updateClaimed(status);
             System.out.println("文件格式转换完成");
-            
-            // Read text content
-            String content = "";
-            if (new File(txtpath).exists()) {
-                content = new String(Files.readAllBytes(Paths.get(txtpath)));
-                System.out.println("提取文本内容，长度: " + content.length() + " 字符");
-            }
-            if (content.isEmpty()) {
-                throw new Exception("无法提取文本内容");
-            }
-            
-            // Update status: Extracting metadata
-            status.setStatus("EXTRACTING");
-            status.setProgress(40);
-            status.setCurrentStep("正在提取论文元数据...");
-            processingStatusService.updateStatus(status);
-            
-            // Extract metadata using Ollama (first 8000 chars usually contain all metadata)
-            String metadataText = content.length() > 8000 ? content.substring(0, 8000) : content;
-            System.out.println("调用Ollama提取元数据 (输入长度: " + metadataText.length() + " 字符)");
-            JsonObject metadata = extractMetadata(metadataText);
-            
-            // Store extracted metadata in status (with truncation for long fields)
-            status.setExtractedTitle(getStringValue(metadata, "title"));
-            status.setExtractedAuthors(getStringValue(metadata, "author"));
-            status.setExtractedInstitution(getStringValueWithLimit(metadata, "organ", 255));
-            status.setExtractedYear(getStringValue(metadata, "year"));
-            status.setExtractedSource(getStringValueWithLimit(metadata, "source", 255));
-            status.setExtractedKeywords(getStringValue(metadata, "keyword"));
-            status.setExtractedDoi(getStringValue(metadata, "doi"));
-            status.setExtractedAbstract(getStringValue(metadata, "summary"));
-            
-            System.out.println("元数据提取完成:");
-            System.out.println("  标题: " + status.getExtractedTitle());
-            System.out.println("  作者: " + status.getExtractedAuthors());
-            System.out.println("  摘要: " + status.getExtractedAbstract());
-            
-            // Use the extracted abstract as the summary (no need for second AI call)
-            status.setExtractedSummary(status.getExtractedAbstract());
-            
-            // Update status to show we're extracting custom concepts (if any are defined)
-            status.setStatus("EXTRACTING");
-            status.setProgress(60);
-            status.setCurrentStep("正在识别自定义概念...");
-            processingStatusService.updateStatus(status);
-            
-            // Extract custom concepts if any are defined
-            extractCustomConcepts(status, metadataText);
-            
-            // Update status: Pending approval
-            status.setStatus("PENDING_APPROVAL");
-            status.setProgress(100);
-            status.setCurrentStep("提取完成，等待用户审核...");
-            processingStatusService.updateStatus(status);
-            
-            System.out.println("=== 元数据提取完成，等待用户审核 ===");
-            
+        }
+        System.out.println("提取元数据文本，长度: " + metadataText.length() + " 字符");
+        if (metadataText.isEmpty()) {
+            throw new Exception("无法提取文本内容");
+        }
+        job.setMetadataText(metadataText);
+    }
+    
+    /**
+     * Background step after stage 2: extract the full text into the .txt used for download
+     */
+    public void fullTextStage(IngestJob job) {
+        try {
+            File txtFile = PaperConverter.extractText(job.getPdfFile(), job.getOutputBase());
+            System.out.println("全文提取完成: " + txtFile.getName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
-            status.setStatus("FAILED");
-            status.setProgress(0);
-            status.setCurrentStep("处理失败");
-            status.setErrorMessage(e.getMessage());
-            processingStatusService.updateStatus(status);
-            System.err.println("处理失败: " + e.getMessage());
-            e.printStackTrace();
+            // Metadata extraction does not depend on the full text, only log the failure
+            System.err.println("全文提取失败: " + job.getTaskId() + " " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Stage 3: extract metadata using Ollama
+     */
+    public void metadataStage(IngestJob job) throws Exception {
+        ProcessingStatus status = job.getStatus();
+        if (STAGE_METADATA_EXTRACTED.equals(status.getStage())) {
+            System.out.println("元数据已在之前提取完成，跳过");
+            return;
+        }
+        
+        // Update status: Extracting metadata
+        status.setStatus("EXTRACTING");
+        status.setProgress(40);
+        status.setCurrentStep("正在提取论文元数据...");
+        processingStatusService.updateClaimed(status);
+        
+        MetadataHeuristics.Result heuristics = Config.METADATA_HEURISTICS
+                ? MetadataHeuristics.extract(job.getPdfFile(), job.getMetadataText()) : null;
+        String metadataText = PromptBuilder.fitPaperText(job.getMetadataText(), Config.LLM_METADATA_TOKEN_BUDGET);
+        System.out.println("提取元数据 (输入长度: " + metadataText.length() + " 字符)");
+        JsonObject metadata = extractMetadata(metadataText, heuristics, progressReporter(job, "正在提取论文元数据"),
+                job.getLlmUsage());
+        
+        // Store extracted metadata in status (with truncation for long fields)
+        status.setExtractedTitle(getStringValue(metadata, "title"));
+        status.setExtractedAuthors(getStringValue(metadata, "author"));
+        status.setExtractedInstitution(getStringValueWithLimit(metadata, "organ", 255));
+        status.setExtractedYear(getStringValue(metadata, "year"));
+        status.setExtractedSource(getStringValueWithLimit(metadata, "source", 255));
+        status.setExtractedKeywords(getStringValue(metadata, "keyword"));
+        status.setExtractedDoi(getStringValue(metadata, "doi"));
+        status.setExtractedAbstract(getStringValue(metadata, "summary"));
+        
+        System.out.println("元数据提取完成:");
+        System.out.println("  标题: " + status.getExtractedTitle());
+        System.out.println("  作者: " + status.getExtractedAuthors());
+        System.out.println("  摘要: " + status.getExtractedAbstract());
+        
+        // Use the extracted abstract as the summary (no need for second AI call)
+        status.setExtractedSummary(status.getExtractedAbstract());
+        status.setStage(STAGE_METADATA_EXTRACTED);
+        status.setProgress(50);
+        status.setCurrentStep("元数据提取完成，等待识别自定义概念...");
+        processingStatusService.updateClaimed(status);
+    }
+    
+    /**
+     * Stage 4: extract custom concepts if any are defined.
+     * Runs at the same time as {@link #metadataStage}, so it never touches the status: results go to the
+     * job's own holder (merged in {@link #persistStage}) and progress is written to current_step alone.
+     */
+    public void conceptStage(IngestJob job) {
+        extractCustomConcepts(job);
+    }
+    
+    /**
+     * Stage 5: hand the extracted results over for user review
+     */
+    public void persistStage(IngestJob job) {
+        ProcessingStatus status = job.getStatus();
+        
+        // Both parallel stages are done, the concept results can join the status now
+        ProcessingStatus concepts = job.getConceptResults();
+        status.setExtractedCustomConcept1(concepts.getExtractedCustomConcept1());
+        status.setExtractedCustomConcept2(concepts.getExtractedCustomConcept2());
+        status.setExtractedCustomConcept3(concepts.getExtractedCustomConcept3());
+        // Update status: Pending approval
+        applyLlmUsage(status, job.getLlmUsage());
+        status.setStatus("PENDING_APPROVAL");
+        status.setProgress(100);
+        status.setCurrentStep("提取完成，等待用户审核...");
+        processingStatusService.updateClaimed(status);
+        
+        System.out.println("=== 元数据提取完成，等待用户审核 ===");
+    }
+    
+    /**
+     * Mark the task as failed after any stage threw
+     */
+    public void failTask(IngestJob job, Exception e) {
+        if (e instanceof LeaseLostException) {
+            // Another worker has taken this task over, it owns all further writes
+            System.err.println("停止处理: " + e.getMessage());
+            return;
         }
+        ProcessingStatus status = job.getStatus() != null ? job.getStatus() : processingStatusService.getStatus(job.getTaskId());
+        status.setStatus("FAILED");
+        status.setProgress(0);
+        status.setCurrentStep("处理失败");
+        status.setErrorMessage(e.getMessage());
+        applyLlmUsage(status, job.getLlmUsage());
+        try {
+            processingStatusService.updateClaimed(status);
+        } catch (LeaseLostException leaseLost) {
+            System.err.println("停止处理: " + leaseLost.getMessage());
+        }
+        System.err.println("处理失败: " + e.getMessage());
+        e.printStackTrace();
+    }
+    
+    /**
+     * Short-circuit an upload whose content is identical to an earlier one: copy the stored extraction
+     * results and derived files, and hand it over for review without any conversion or LLM call.
+     * Only the status object is filled in; the caller inserts it as PENDING_APPROVAL, so a reused
+     * upload is never visible to the workers as claimable.
+     * @param status the new upload, not inserted yet
+     * @param previous finished task with the same content hash
+     * @return false if the earlier files are gone and the upload has to be processed normally
+     */
+    public boolean reuseExtraction(ProcessingStatus status, ProcessingStatus previous) {
+        File previousBase = PaperConverter.outputBaseOf(new File(previous.getFilePath()));
+        File base = PaperConverter.outputBaseOf(new File(status.getFilePath()));
+        try {
+            File pdf = new File(base.getPath() + ".pdf");
+            if (!pdf.isFile() && !copyIfExists(new File(previousBase.getPath() + ".pdf"), pdf)) {
+                return false;
+            }
+            copyIfExists(new File(previousBase.getPath() + ".txt"), new File(base.getPath() + ".txt"));
+            copyIfExists(new File(previousBase.getPath() + ".docx"), new File(base.getPath() + ".docx"));
+        } catch (IOException e) {
+            System.err.println("复用之前的转换结果失败: " + e.getMessage());
+            return false;
+        }
+        
+        status.setExtractedTitle(previous.getExtractedTitle());
+        status.setExtractedAuthors(previous.getExtractedAuthors());
+        status.setExtractedInstitution(previous.getExtractedInstitution());
+        status.setExtractedYear(previous.getExtractedYear());
+        status.setExtractedSource(previous.getExtractedSource());
+        status.setExtractedKeywords(previous.getExtractedKeywords());
+        status.setExtractedDoi(previous.getExtractedDoi());
+        status.setExtractedAbstract(previous.getExtractedAbstract());
+        status.setExtractedSummary(previous.getExtractedSummary());
+        status.setExtractedCustomConcept1(previous.getExtractedCustomConcept1());
+        status.setExtractedCustomConcept2(previous.getExtractedCustomConcept2());
+        status.setExtractedCustomConcept3(previous.getExtractedCustomConcept3());
+        status.setStage(STAGE_METADATA_EXTRACTED);
+        status.setStatus("PENDING_APPROVAL");
+        status.setProgress(100);
+        status.setCurrentStep("检测到相同文件，已复用之前的提取结果，等待用户审核...");
+        
+        System.out.println("=== 相同文件已处理过 (任务 " + previous.getTaskId() + ")，复用提取结果 ===");
+        return true;
+    }
+    
+    private boolean copyIfExists(File source, File target) throws IOException {
+        if (!source.isFile()) {
+            return false;
+        }
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
     }
     
     /**
-     * Extract metadata from paper content using Ollama
+     * Whether the pdf was already produced by an earlier, interrupted run of this task.
+     * The stage is only recorded once the pdf is complete; the .txt is not part of the checkpoint
+     * since it is extracted in the background and may be missing after a restart.
      */
-    private JsonObject extractMetadata(String content) throws Exception {
+    private boolean isConverted(IngestJob job) {
+        return job.getStatus().getStage() != null && new File(job.getOutputBase().getPath() + ".pdf").isFile();
+    }
+    
+    /**
+     * Store the LLM token counts and time of this processing run with the task
+     */
+    private void applyLlmUsage(ProcessingStatus status, LlmUsage usage) {
+        if (usage.isEmpty()) {
+            return;
+        }
+        status.setLlmCalls(usage.getCalls());
+        status.setLlmPromptTokens(usage.getPromptTokens());
+        status.setLlmOutputTokens(usage.getOutputTokens());
+        status.setLlmDurationMs(usage.getDurationMillis());
+        status.setLlmMetrics(usage.toJson());
+    }
+    
+    /**
+     * Write the number of generated tokens to current_step while a response streams in,
+     * so a slow or stalled model call shows up in the progress view within seconds
+     */
+    private BigModelUtil.StreamListener progressReporter(IngestJob job, String step) {
+        String taskId = job.getTaskId();
+        Long leaseToken = job.getStatus().getLeaseToken();
+        long[] lastReport = {System.currentTimeMillis()};
+        return tokens -> {
+            long now = System.currentTimeMillis();
+            if (now - lastReport[0] < PROGRESS_REPORT_MILLIS) {
+                return;
+            }
+            lastReport[0] = now;
+            // Only current_step is written: the other parallel stage may be changing the rest of the status
+            processingStatusService.updateStepClaimed(taskId, leaseToken, step + "...（已生成 " + tokens + " 个token）");
+        };
+    }
+    
+    /**
+     * Extract metadata from paper content using Ollama.
+     * Fields the rule-based extractor is confident about are taken as they are, the LLM is only asked for the rest
+     * (and not called at all if nothing is left). The response is constrained to a schema of the requested fields;
+     * fields that still fail validation are asked for again on their own, at most LLM_REPAIR_ATTEMPTS times.
+     * @param heuristics rule-based results, or null if disabled
+     */
+    private JsonObject extractMetadata(String content, MetadataHeuristics.Result heuristics,
+                                       BigModelUtil.StreamListener listener, LlmUsage usage) throws Exception {
         System.out.println("=== 开始提取元数据 ===");
-        String prompt = "你是一个学术论文元数据提取专家。请从下面的论文文本中提取元数据，并严格按照以下JSON格式返回，不要添加任何Markdown标记或额外说明：\n\n" +
-            "{\n" +
-            "  \"title\": \"论文标题\",\n" +
-            "  \"author\": \"作者1; 作者2; 作者3\",\n" +
-            "  \"organ\": \"作者单位\",\n" +
-            "  \"year\": \"发表年份(仅数字)\",\n" +
-            "  \"source\": \"期刊或会议名称\",\n" +
-            "  \"keyword\": \"关键词1; 关键词2; 关键词3\",\n" +
-            "  \"doi\": \"DOI编号\",\n" +
-            "  \"summary\": \"论文摘要内容\"\n" +
-            "}\n\n" +
-            "如果某个字段无法提取，请使用空字符串\"\"。现在开始提取以下论文的元数据：\n\n" +
-            content;
+        JsonObject result = new JsonObject();
+        List<String> fields = new ArrayList<>();
+        for (String field : METADATA_FIELDS.keySet()) {
+            if (heuristics != null && heuristics.getConfidence(field) >= Config.METADATA_HEURISTIC_CONFIDENCE) {
+                result.addProperty(field, heuristics.getValue(field));
+            } else {
+                fields.add(field);
+            }
+        }
+        if (heuristics != null) {
+            System.out.println("规则提取置信度: " + heuristics + "，需要大模型提取的字段: " + fields);
+        }
+        
+        if (fields.isEmpty()) {
+            System.out.println("所有字段均已由规则提取，跳过大模型调用");
+        } else {
+            System.out.println("调用 BigModelUtil.ollamaTextGeneration...");
+            String response = BigModelUtil.ollamaTextGeneration(buildMetadataPrompt(fields, null, content),
+                    JsonSchemas.stringFields(fields), listener, usage, "metadata", answer -> allValid(fields, answer));
+            System.out.println("BigModelUtil 返回，响应长度: " + (response != null ? response.length() : "null"));
+            
+            JsonObject answer = parseJsonSafely(response);
+            System.out.println("JSON 解析完成，字段数: " + answer.size());
+            for (String field : fields) {
+                if (answer.has(field)) {
+                    result.add(field, answer.get(field));
+                }
+            }
+        }
         
-        System.out.println("调用 BigModelUtil.ollamaTextGeneration...");
-        String response = BigModelUtil.ollamaTextGeneration(prompt);
-        System.out.println("BigModelUtil 返回，响应长度: " + (response != null ? response.length() : "null"));
+        List<String> invalid = invalidMetadataFields(result);
+        for (int attempt = 1; attempt <= Config.LLM_REPAIR_ATTEMPTS && !invalid.isEmpty(); attempt++) {
+            System.out.println("元数据字段校验未通过 " + invalid + "，第 " + attempt + " 次重新提取这些字段");
+            List<String> retry = invalid;
+            String repairResponse = BigModelUtil.ollamaTextGeneration(buildMetadataPrompt(invalid, result, content),
+                    JsonSchemas.stringFields(invalid), listener, usage, "metadata-repair", answer -> allValid(retry, answer));
+            JsonObject repaired = parseJsonSafely(repairResponse);
+            for (String field : invalid) {
+                if (isValidMetadataField(field, repaired)) {
+                    result.add(field, repaired.get(field));
+                }
+            }
+            invalid = invalidMetadataFields(result);
+        }
         
-        JsonObject result = parseJsonSafely(response);
-        System.out.println("JSON 解析完成，字段数: " + result.size());
+        // Less certain rule-based values still beat a field the model left empty or got wrong
+        if (heuristics != null) {
+            for (String field : METADATA_FIELDS.keySet()) {
+                String value = heuristics.getValue(field);
+                if (value != null && (invalid.contains(field) || result.get(field).getAsString().trim().isEmpty())) {
+                    result.addProperty(field, value);
+                }
+            }
+            invalid = invalidMetadataFields(result);
+        }
+        if (!invalid.isEmpty()) {
+            System.out.println("以下元数据字段仍未通过校验: " + invalid);
+        }
         System.out.println("=== 元数据提取完成 ===");
         
         return result;
     }
     
+    /**
+     * @param previous earlier answer whose values for these fields were rejected, or null on the first attempt
+     */
+    private String buildMetadataPrompt(List<String> fields, JsonObject previous, String content) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("你是一个学术论文元数据提取专家。请从下面的论文文本中提取元数据，并严格按照以下JSON格式返回，不要添加任何Markdown标记或额外说明：\n\n");
+        prompt.append("{\n");
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.get(i);
+            prompt.append("  \"").append(field).append("\": \"").append(METADATA_FIELDS.get(field)).append("\"")
+                    .append(i < fields.size() - 1 ? ",\n" : "\n");
+        }
+        prompt.append("}\n\n");
+        if (previous != null) {
+            prompt.append("上一次提取的这些字段缺失或格式不正确：");
+            for (String field : fields) {
+                prompt.append(field).append("=").append(previous.has(field) ? previous.get(field).toString() : "缺失").append("; ");
+            }
+            prompt.append("请重新仔细提取。\n\n");
+        }
+        prompt.append("如果某个字段无法提取，请使用空字符串\"\"。现在开始提取以下论文的元数据：\n\n");
+        prompt.append(content);
+        return prompt.toString();
+    }
+    
+    private List<String> invalidMetadataFields(JsonObject metadata) {
+        List<String> invalid = new ArrayList<>();
+        for (String field : METADATA_FIELDS.keySet()) {
+            if (!isValidMetadataField(field, metadata)) {
+                invalid.add(field);
+            }
+        }
+        return invalid;
+    }
+    
+    private boolean allValid(List<String> fields, JsonObject answer) {
+        for (String field : fields) {
+            if (!isValidMetadataField(field, answer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * A field is valid if it is a string; title and author must not be empty,
+     * year and doi must look like a year and a DOI when present
+     */
+    private boolean isValidMetadataField(String field, JsonObject metadata) {
+        if (!metadata.has(field) || !metadata.get(field).isJsonPrimitive() || !metadata.get(field).getAsJsonPrimitive().isString()) {
+            return false;
+        }
+        String value = metadata.get(field).getAsString().trim();
+        switch (field) {
+            case "title":
+            case "author":
+                return !value.isEmpty();
+            case "year":
+                return value.isEmpty() || YEAR_PATTERN.matcher(value).matches();
+            case "doi":
+                return value.isEmpty() || DOI_PATTERN.matcher(value).matches();
+            default:
+                return true;
+        }
+    }
+    
     /**
      * Extract custom concepts from paper content using Ollama
-     * This is called after metadata extraction to identify which user-defined concepts apply
-     * Optimized to reduce timeout issues
+     * This is called after metadata extraction to identify which user-defined concepts apply.
+     * All relationship groups are asked for in one call; only groups missing from that answer
+     * are asked for again one by one.
      */
-    private void extractCustomConcepts(ProcessingStatus status, String content) {
+    private void extractCustomConcepts(IngestJob job) {
+        ProcessingStatus results = job.getConceptResults();
+        LlmUsage usage = job.getLlmUsage();
         try {
             // Get all custom concepts
             List<CustomConcept> customConcepts = customConceptService.getAllConcepts();
@@ -184,14 +494,26 @@ public class AfterUpload {
                 System.out.println("没有自定义概念配置，跳过自定义概念提取");
                 return;
             }
+            if (customConcepts.size() > MAX_CUSTOM_CONCEPTS) {
+                // Only three result columns exist, further groups were never stored
+                customConcepts = customConcepts.subList(0, MAX_CUSTOM_CONCEPTS);
+            }
             
             System.out.println("开始提取自定义概念，共 " + customConcepts.size() + " 个关系");
             
-            // Use a shorter content for faster processing (first 4000 chars should be enough)
-            String shortContent = content.length() > 4000 ? content.substring(0, 4000) : content;
+            // Concepts show up in the title, abstract and keywords; a smaller budget keeps the calls fast
+            String shortContent = PromptBuilder.fitPaperText(job.getMetadataText(), Config.LLM_CONCEPT_TOKEN_BUDGET);
             
-            // Process each custom concept with timeout protection
+            List<Integer> remaining = new ArrayList<>();
             for (int i = 0; i < customConcepts.size(); i++) {
+                remaining.add(i);
+            }
+            if (customConcepts.size() > 1) {
+                remaining = extractCustomConceptsCombined(job, customConcepts, shortContent);
+            }
+            
+            // Per-group calls for whatever the combined answer did not cover
+            for (int i : remaining) {
                 CustomConcept concept = customConcepts.get(i);
                 String relationshipName = concept.getRelationshipName();
                 List<String> concepts = concept.getConceptsList();
@@ -203,7 +525,10 @@ public class AfterUpload {
                     String prompt = buildCustomConceptPrompt(relationshipName, concepts, shortContent);
                     
                     // Call LLM with timeout protection
-                    String response = BigModelUtil.ollamaTextGeneration(prompt);
+                    String response = BigModelUtil.ollamaTextGeneration(prompt,
+                            JsonSchemas.enumArrayFields(Collections.singletonMap("concepts", concepts)),
+                            progressReporter(job, "正在识别自定义概念 " + (i + 1) + "/" + customConcepts.size()),
+                            usage, "concept" + (i + 1), answer -> hasArray(answer, "concepts"));
                     JsonObject result = parseJsonSafely(response);
                     
                     // Extract matching concepts
@@ -211,27 +536,7 @@ public class AfterUpload {
                     if (result.has("concepts") && result.get("concepts").isJsonArray()) {
                         matchingConcepts = result.getAsJsonArray("concepts");
                     }
-                    
-                    // Build JSON result for this custom concept
-                    JsonObject customConceptResult = new JsonObject();
-                    customConceptResult.addProperty("relationshipName", relationshipName);
-                    customConceptResult.add("matchingConcepts", matchingConcepts);
-                    
-                    // Store in appropriate field
-                    String resultJson = gson.toJson(customConceptResult);
-                    switch (i) {
-                        case 0:
-                            status.setExtractedCustomConcept1(resultJson);
-                            break;
-                        case 1:
-                            status.setExtractedCustomConcept2(resultJson);
-                            break;
-                        case 2:
-                            status.setExtractedCustomConcept3(resultJson);
-                            break;
-                    }
-                    
-                    System.out.println("自定义概念 " + (i + 1) + " 提取结果: " + resultJson);
+                    storeCustomConcept(results, i, relationshipName, matchingConcepts);
                 } catch (Exception conceptError) {
                     System.err.println("提取自定义概念 " + (i + 1) + " 失败: " + conceptError.getMessage());
                     // Continue with next concept even if this one fails
@@ -245,6 +550,89 @@ public class AfterUpload {
         }
     }
     
+    /**
+     * Ask for all relationship groups in one call, so the paper excerpt is processed by the model only once
+     * @return indexes of the groups that could not be read from the answer
+     */
+    private List<Integer> extractCustomConceptsCombined(IngestJob job, List<CustomConcept> customConcepts, String content) {
+        List<Integer> missing = new ArrayList<>();
+        JsonObject result;
+        try {
+            Map<String, List<String>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < customConcepts.size(); i++) {
+                groups.put("group" + (i + 1), customConcepts.get(i).getConceptsList());
+            }
+            String response = BigModelUtil.ollamaTextGeneration(buildCombinedConceptPrompt(customConcepts, content),
+                    JsonSchemas.enumArrayFields(groups), progressReporter(job, "正在识别自定义概念"), job.getLlmUsage(), "concepts",
+                    answer -> groups.keySet().stream().allMatch(key -> hasArray(answer, key)));
+            result = parseJsonSafely(response);
+        } catch (Exception e) {
+            System.err.println("合并提取自定义概念失败，改为逐个提取: " + e.getMessage());
+            result = new JsonObject();
+        }
+        for (int i = 0; i < customConcepts.size(); i++) {
+            String key = "group" + (i + 1);
+            if (result.has(key) && result.get(key).isJsonArray()) {
+                storeCustomConcept(job.getConceptResults(), i, customConcepts.get(i).getRelationshipName(), result.getAsJsonArray(key));
+            } else {
+                missing.add(i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            System.out.println("合并提取结果缺少 " + missing.size() + " 组自定义概念，逐个重新提取");
+        }
+        return missing;
+    }
+    
+    private static boolean hasArray(JsonObject answer, String key) {
+        return answer.has(key) && answer.get(key).isJsonArray();
+    }
+    
+    private void storeCustomConcept(ProcessingStatus status, int index, String relationshipName, JsonArray matchingConcepts) {
+        // Build JSON result for this custom concept
+        JsonObject customConceptResult = new JsonObject();
+        customConceptResult.addProperty("relationshipName", relationshipName);
+        customConceptResult.add("matchingConcepts", matchingConcepts);
+        
+        // Store in appropriate field
+        String resultJson = gson.toJson(customConceptResult);
+        switch (index) {
+            case 0:
+                status.setExtractedCustomConcept1(resultJson);
+                break;
+            case 1:
+                status.setExtractedCustomConcept2(resultJson);
+                break;
+            case 2:
+                status.setExtractedCustomConcept3(resultJson);
+                break;
+        }
+        
+        System.out.println("自定义概念 " + (index + 1) + " 提取结果: " + resultJson);
+    }
+    
+    /**
+     * Build one prompt covering all relationship groups; the answer has one key per group
+     */
+    private String buildCombinedConceptPrompt(List<CustomConcept> customConcepts, String content) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("从以下论文内容中，分别判断该论文使用了下面各组中的哪些概念。\n\n");
+        StringBuilder example = new StringBuilder("{");
+        for (int i = 0; i < customConcepts.size(); i++) {
+            CustomConcept concept = customConcepts.get(i);
+            prompt.append("第").append(i + 1).append("组 关系类型: ").append(concept.getRelationshipName()).append("\n");
+            prompt.append("可能的概念: ").append(String.join(", ", concept.getConceptsList())).append("\n\n");
+            example.append(i == 0 ? "" : ", ").append("\"group").append(i + 1).append("\": [\"匹配的概念\"]");
+        }
+        example.append("}");
+        prompt.append("只返回JSON格式（不要markdown标记），每组一个键，值为该组中匹配的概念列表：").append(example).append("\n");
+        prompt.append("某组没有匹配时，该组返回空列表 []。\n");
+        prompt.append("每组只返回该组列表中存在的概念名称。\n\n");
+        prompt.append("论文内容：\n").append(content);
+        
+        return prompt.toString();
+    }
+    
     /**
      * Build optimized prompt for custom concept extraction
      */
@@ -266,28 +654,13 @@ public class AfterUpload {
      * Safely parse JSON from Ollama response, handling various formats
      */
     private JsonObject parseJsonSafely(String response) {
-        try {
-            // Remove markdown code fences if present
-            String cleaned = response.trim();
-            if (cleaned.startsWith("```json")) {
-                cleaned = cleaned.substring(7);
-            }
-            if (cleaned.startsWith("```")) {
-                cleaned = cleaned.substring(3);
-            }
-            if (cleaned.endsWith("```")) {
-                cleaned = cleaned.substring(0, cleaned.length() - 3);
-            }
-            cleaned = cleaned.trim();
-            
-            // Try to parse as JSON
-            return JsonParser.parseString(cleaned).getAsJsonObject();
-        } catch (Exception e) {
+        JsonObject json = BigModelUtil.parseJsonObject(response);
+        if (json == null) {
             System.err.println("JSON解析失败，响应内容: " + response);
-            System.err.println("错误: " + e.getMessage());
             // Return empty JSON object as fallback
             return new JsonObject();
         }
+        return json;
     }
     
     /**
@@ -325,7 +698,7 @@ public class AfterUpload {
             System.out.println("=== 保存已批准的论文: " + articleInfo.getTitle() + " ===");
             
             // Get file paths
-            String oripath = status.getFilePath().split("\\.")[0];
+            String oripath = PaperConverter.outputBaseOf(new File(status.getFilePath())).getPath();
             articleInfo.setPathpdf(oripath + ".pdf");
             articleInfo.setPathdocx(oripath + ".docx");
             articleInfo.setPathtxt(oripath + ".txt");
@@ -403,6 +776,6 @@ public class AfterUpload {
      */
     @Deprecated
     public void file_task(ArticleInfo articleInfo) {
-        System.out.println("Warning: Using deprecated file_task method. Please use processWithStatus instead.");
+        System.out.println("Warning: Using deprecated file_task method. Please use IngestQueueService.enqueue instead.");
     }
 }
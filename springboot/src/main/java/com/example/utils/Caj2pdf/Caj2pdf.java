@@ -8,6 +8,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class Caj2pdf {
     private static final String INPUT_DIR = Config.CAJ_PATH;
@@ -67,6 +69,48 @@ public class Caj2pdf {
             return;
         }
 
+        runAtomically(cajFile, pdfFile);
+    }
+
+    /**
+     * 只转换单个CAJ文件，输出到指定的pdf路径，不扫描整个上传目录
+     * @param cajFile 待转换的CAJ文件
+     * @param pdfFile 输出的pdf文件
+     * @return 生成的pdf文件
+     */
+    public static File convertFile(File cajFile, File pdfFile) throws IOException, InterruptedException {
+        if (!cajFile.isFile()) {
+            throw new IOException("CAJ文件不存在: " + cajFile.getAbsolutePath());
+        }
+        validateExecutables();
+
+        if (!pdfFile.exists() && !runAtomically(cajFile, pdfFile)) {
+            throw new IOException("CAJ转pdf失败: " + cajFile.getName());
+        }
+        if (!pdfFile.isFile()) {
+            throw new IOException("未生成pdf文件: " + pdfFile.getAbsolutePath());
+        }
+        return pdfFile;
+    }
+
+    /**
+     * 先写入 .pdf.part 再原子改名，已存在的pdf一定是完整的；崩溃或失败遗留的 .part 在下次转换前删除
+     */
+    private static boolean runAtomically(File cajFile, File pdfFile) throws IOException, InterruptedException {
+        File partFile = new File(pdfFile.getPath() + ".part");
+        Files.deleteIfExists(partFile.toPath());
+        try {
+            if (!runConverter(cajFile, partFile) || !partFile.isFile()) {
+                return false;
+            }
+            Files.move(partFile.toPath(), pdfFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } finally {
+            Files.deleteIfExists(partFile.toPath());
+        }
+    }
+
+    private static boolean runConverter(File cajFile, File pdfFile) throws IOException, InterruptedException {
         LogUtil_caj2pdf.log("正在处理: " + cajFile.getName());
 
         String[] command = {
@@ -94,9 +138,10 @@ public class Caj2pdf {
         }
 
         if (exitCode == 0) {
-            LogUtil_caj2pdf.log("转换成功: " + pdfFileName);
+            LogUtil_caj2pdf.log("转换成功: " + pdfFile.getName());
         } else {
             LogUtil_caj2pdf.log("转换失败: " + cajFile.getName() + " (Exit code: " + exitCode + ")");
         }
+        return exitCode == 0;
     }
 }
\ No newline at end of file
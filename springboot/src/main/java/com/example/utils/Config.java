@@ -1,10 +1,39 @@
 package com.example.utils;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
 public class Config {
     // Ollama Configuration - Local LLM with Ministral-3 (3B model)
     // Note: Requires Ollama 0.13.1+ (pre-release)
     public static final String OLLAMA_BASE_URL = System.getenv().getOrDefault("OLLAMA_BASE_URL", "http://localhost:11434");
     public static final String OLLAMA_MODEL = "ministral-3:3b";  // 3GB model with 256K context window
+    public static final List<String> OLLAMA_BASE_URLS = urls(System.getenv().getOrDefault("OLLAMA_BASE_URLS", OLLAMA_BASE_URL));  // comma-separated model servers; calls go to the least busy one
+    public static final int OLLAMA_MAX_IN_FLIGHT = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_MAX_IN_FLIGHT", "1"));  // concurrent requests sent to each Ollama server; the starting point when adaptive
+    public static final boolean OLLAMA_ADAPTIVE_CONCURRENCY = Boolean.parseBoolean(System.getenv().getOrDefault("OLLAMA_ADAPTIVE_CONCURRENCY", "true"));  // adjust the per-server limit from observed latency (AIMD)
+    public static final int OLLAMA_MIN_IN_FLIGHT = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_MIN_IN_FLIGHT", "1"));
+    public static final int OLLAMA_MAX_IN_FLIGHT_LIMIT = Math.max(OLLAMA_MAX_IN_FLIGHT, Integer.parseInt(System.getenv().getOrDefault("OLLAMA_MAX_IN_FLIGHT_LIMIT", "4")));  // upper bound of the adaptive limit, never below OLLAMA_MAX_IN_FLIGHT
+    public static final double OLLAMA_AIMD_BACKOFF = Double.parseDouble(System.getenv().getOrDefault("OLLAMA_AIMD_BACKOFF", "0.7"));  // the limit is multiplied by this on overload
+    public static final double OLLAMA_AIMD_SLOWDOWN = Double.parseDouble(System.getenv().getOrDefault("OLLAMA_AIMD_SLOWDOWN", "1.5"));  // time per generated token over the best seen that counts as overload
+    public static final double OLLAMA_AIMD_QUEUE_SHARE = Double.parseDouble(System.getenv().getOrDefault("OLLAMA_AIMD_QUEUE_SHARE", "0.3"));  // share of a call spent queued inside Ollama that counts as overload
+    public static final int OLLAMA_HEALTH_CHECK_SECONDS = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_HEALTH_CHECK_SECONDS", "30"));
+    public static final int OLLAMA_BREAKER_FAILURES = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_BREAKER_FAILURES", "3"));  // consecutive failures that take a server out of rotation
+    public static final int OLLAMA_BREAKER_OPEN_SECONDS = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_BREAKER_OPEN_SECONDS", "60"));  // before a trial request is let through again
+    public static final int OLLAMA_FAILOVER_RETRIES = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_FAILOVER_RETRIES", "1"));  // a call that failed on one server is retried on up to this many others
+    public static final int OLLAMA_QUEUE_TIMEOUT_SECONDS = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_QUEUE_TIMEOUT_SECONDS", "600"));  // max wait for a free request slot
+    public static final int OLLAMA_CONNECT_TIMEOUT_SECONDS = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_CONNECT_TIMEOUT_SECONDS", "15"));
+    public static final int OLLAMA_READ_TIMEOUT_SECONDS = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_READ_TIMEOUT_SECONDS", "180"));  // when streaming: max silence between chunks
+    public static final boolean OLLAMA_STREAM = Boolean.parseBoolean(System.getenv().getOrDefault("OLLAMA_STREAM", "true"));  // stream responses, report progress and stop once the JSON is complete
+    public static final boolean OLLAMA_STRUCTURED_OUTPUT = Boolean.parseBoolean(System.getenv().getOrDefault("OLLAMA_STRUCTURED_OUTPUT", "true"));  // send a JSON schema as "format" (Ollama 0.5+)
+    public static final int LLM_REPAIR_ATTEMPTS = Integer.parseInt(System.getenv().getOrDefault("LLM_REPAIR_ATTEMPTS", "1"));  // re-asks for metadata fields that fail validation
+    public static final String OLLAMA_KEEP_ALIVE = System.getenv().getOrDefault("OLLAMA_KEEP_ALIVE", "30m");  // how long Ollama keeps the model loaded after a request
+    public static final boolean OLLAMA_WARMUP = Boolean.parseBoolean(System.getenv().getOrDefault("OLLAMA_WARMUP", "true"));  // load the model at startup
+    public static final int OLLAMA_KEEP_WARM_SECONDS = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_KEEP_WARM_SECONDS", "120"));  // residency check, and reload while ingest is busy
+    public static final int OLLAMA_HTTP_KEEP_ALIVE_SECONDS = Integer.parseInt(System.getenv().getOrDefault("OLLAMA_HTTP_KEEP_ALIVE_SECONDS", "60"));  // idle pooled connections are closed after this
 
     // MySQL configuration — read from environment variables if available
     public static final String MYSQL_LINK = System.getenv().getOrDefault("MYSQL_URL", "jdbc:mysql://localhost:3306/manager?useUnicode=true&characterEncoding=utf-8&allowMultiQueries=true&useSSL=false&serverTimezone=GMT%2b8&allowPublicKeyRetrieval=true");
@@ -22,6 +51,9 @@ public class Config {
     public static final String TXT_PATH = UPLOAD_PATH;
     public static final String DOCX_PATH = UPLOAD_PATH;
     public static final String CAJ_PATH = UPLOAD_PATH;
+    public static final long UPLOAD_MAX_BYTES = Long.parseLong(System.getenv().getOrDefault("UPLOAD_MAX_BYTES", String.valueOf(100L * 1024 * 1024)));  // keep in line with spring.servlet.multipart.max-file-size
+    public static final int BATCH_MAX_FILES = Integer.parseInt(System.getenv().getOrDefault("BATCH_MAX_FILES", "10000"));  // papers per batch upload
+    public static final String BATCH_ZIP_CHARSET = System.getenv().getOrDefault("BATCH_ZIP_CHARSET", "GBK");  // file name encoding of ZIP entries without the UTF-8 flag
 
     //caj转pdf配置
     public static final String CAJ2PDF_CONVERTER_EXE = "E:\\manager\\springboot\\src\\main\\java\\com\\example\\utils\\Caj2pdf\\caj2pdf.exe";
@@ -30,12 +62,60 @@ public class Config {
     //pdf转docx配置
     public static final String PDF2DOCX_PY_SCRIPT = System.getenv().getOrDefault("PDF2DOCX_PY_SCRIPT", "/app/scripts/pdf_converter.py");
     public static final int PDF2DOCX_TIMEOUT_MINUTES = Integer.parseInt(System.getenv().getOrDefault("PDF2DOCX_TIMEOUT_MINUTES", "30"));
+    public static final int DOCX_CONCURRENCY = Integer.parseInt(System.getenv().getOrDefault("DOCX_CONCURRENCY", "1"));  // docx is generated on first download
+    public static final boolean DOCX_IDLE_CONVERSION = Boolean.parseBoolean(System.getenv().getOrDefault("DOCX_IDLE_CONVERSION", "true"));  // pre-generate missing docx while ingest is idle
+    public static final int DOCX_IDLE_SCAN_SECONDS = Integer.parseInt(System.getenv().getOrDefault("DOCX_IDLE_SCAN_SECONDS", "600"));
+    public static final int DOCX_RETRY_AFTER_SECONDS = Integer.parseInt(System.getenv().getOrDefault("DOCX_RETRY_AFTER_SECONDS", "5"));  // Retry-After sent while a download is still being generated
 
     //pdf2txt配置
     public static final String PDF2TXT_PY_SCRIPT = System.getenv().getOrDefault("PDF2TXT_PY_SCRIPT", "/app/scripts/pdf_to_text.py");
     public static final int PDF2TXT_TIMEOUT_MINUTES = Integer.parseInt(System.getenv().getOrDefault("PDF2TXT_TIMEOUT_MINUTES", "30"));
     public static final String OCR_PATH = System.getenv().getOrDefault("OCR_PATH", "/usr/bin");
     public static final String LOG_PATH = System.getenv().getOrDefault("LOG_PATH", "/app/log");
+    public static final String PDF_TEXT_EXTRACTOR = System.getenv().getOrDefault("PDF_TEXT_EXTRACTOR", "pdfbox");  // "pdfbox" (in-JVM, OCR only for pages without text) or "python"
+
+    // Long-lived Python conversion workers (imports fitz/pytesseract/pdf2docx once per process)
+    public static final String PY_WORKER_SCRIPT = System.getenv().getOrDefault("PY_WORKER_SCRIPT", "/app/scripts/conversion_worker.py");
+    public static final boolean PY_WORKER_ENABLED = Boolean.parseBoolean(System.getenv().getOrDefault("PY_WORKER_ENABLED", "true"));
+    public static final int PY_WORKER_POOL_SIZE = Integer.parseInt(System.getenv().getOrDefault("PY_WORKER_POOL_SIZE", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    public static final int PY_WORKER_MAX_JOBS = Integer.parseInt(System.getenv().getOrDefault("PY_WORKER_MAX_JOBS", "50"));  // recycle a worker after this many jobs
+    public static final int PY_WORKER_STARTUP_SECONDS = Integer.parseInt(System.getenv().getOrDefault("PY_WORKER_STARTUP_SECONDS", "60"));
+    public static final int PY_WORKER_HEALTH_CHECK_SECONDS = Integer.parseInt(System.getenv().getOrDefault("PY_WORKER_HEALTH_CHECK_SECONDS", "30"));  // ping workers idle longer than this before use
+
+    // LLM response cache (in-memory LRU in front of one file per response)
+    public static final boolean LLM_CACHE_ENABLED = Boolean.parseBoolean(System.getenv().getOrDefault("LLM_CACHE_ENABLED", "true"));
+    public static final String LLM_CACHE_PATH = System.getenv().getOrDefault("LLM_CACHE_PATH", UPLOAD_PATH + "/llm-cache");
+    public static final int LLM_CACHE_MEMORY_ENTRIES = Integer.parseInt(System.getenv().getOrDefault("LLM_CACHE_MEMORY_ENTRIES", "500"));
+    public static final int LLM_CACHE_DISK_MAX_MB = Integer.parseInt(System.getenv().getOrDefault("LLM_CACHE_DISK_MAX_MB", "200"));
+    public static final int LLM_CACHE_TTL_HOURS = Integer.parseInt(System.getenv().getOrDefault("LLM_CACHE_TTL_HOURS", "720"));
+
+    // Ingest pipeline configuration
+    public static final int INGEST_QUEUE_CAPACITY = Integer.parseInt(System.getenv().getOrDefault("INGEST_QUEUE_CAPACITY", "100"));
+    public static final int INGEST_STAGE_QUEUE_CAPACITY = Integer.parseInt(System.getenv().getOrDefault("INGEST_STAGE_QUEUE_CAPACITY", "10"));  // hand-off queue between pipeline stages
+    public static final int INGEST_CONVERT_CONCURRENCY = Integer.parseInt(System.getenv().getOrDefault("INGEST_CONVERT_CONCURRENCY", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    public static final int INGEST_LLM_CONCURRENCY = Integer.parseInt(System.getenv().getOrDefault("INGEST_LLM_CONCURRENCY", "4")) * OLLAMA_BASE_URLS.size();  // per server; tasks beyond the Ollama client's current limit wait for a slot there
+    public static final int INGEST_RETRY_AFTER_SECONDS = Integer.parseInt(System.getenv().getOrDefault("INGEST_RETRY_AFTER_SECONDS", "30"));
+    public static final int METADATA_TEXT_CHARS = Integer.parseInt(System.getenv().getOrDefault("METADATA_TEXT_CHARS", "12000"));  // text extraction for the LLM stops after this many characters
+    public static final boolean METADATA_HEURISTICS = Boolean.parseBoolean(System.getenv().getOrDefault("METADATA_HEURISTICS", "true"));  // rule-based extraction before the LLM
+    public static final double METADATA_HEURISTIC_CONFIDENCE = Double.parseDouble(System.getenv().getOrDefault("METADATA_HEURISTIC_CONFIDENCE", "0.8"));  // rule-based fields at or above this skip the LLM
+    public static final int LLM_METADATA_TOKEN_BUDGET = Integer.parseInt(System.getenv().getOrDefault("LLM_METADATA_TOKEN_BUDGET", "3000"));  // paper text tokens in the metadata prompt
+    public static final int LLM_CONCEPT_TOKEN_BUDGET = Integer.parseInt(System.getenv().getOrDefault("LLM_CONCEPT_TOKEN_BUDGET", "1500"));  // paper text tokens in the concept prompt
+    public static final double LLM_CJK_TOKENS_PER_CHAR = Double.parseDouble(System.getenv().getOrDefault("LLM_CJK_TOKENS_PER_CHAR", "1.0"));  // token estimate for the model's tokenizer
+    public static final double LLM_CHARS_PER_TOKEN = Double.parseDouble(System.getenv().getOrDefault("LLM_CHARS_PER_TOKEN", "4.0"));  // for non-CJK text
+
+    // Durable ingest queue (processing_status leases)
+    public static final String INGEST_NODE_ID = System.getenv().getOrDefault("INGEST_NODE_ID", defaultNodeId());
+    public static final int INGEST_LEASE_SECONDS = Integer.parseInt(System.getenv().getOrDefault("INGEST_LEASE_SECONDS", "120"));
+    public static final int INGEST_HEARTBEAT_SECONDS = Integer.parseInt(System.getenv().getOrDefault("INGEST_HEARTBEAT_SECONDS", "30"));
+    public static final int INGEST_RECOVERY_INTERVAL_SECONDS = Integer.parseInt(System.getenv().getOrDefault("INGEST_RECOVERY_INTERVAL_SECONDS", "60"));
+    public static final int INGEST_MAX_ATTEMPTS = Integer.parseInt(System.getenv().getOrDefault("INGEST_MAX_ATTEMPTS", "3"));
+
+    // Multi-node ingest: "local" hands uploads to this node's workers, "distributed" lets every worker node
+    // claim pending rows from processing_status (UPLOAD_PATH must then be a volume shared by all nodes)
+    public static final String INGEST_MODE = System.getenv().getOrDefault("INGEST_MODE", "local");
+    public static final boolean INGEST_DISTRIBUTED = "distributed".equalsIgnoreCase(INGEST_MODE);
+    public static final boolean INGEST_WORKER_ENABLED = Boolean.parseBoolean(System.getenv().getOrDefault("INGEST_WORKER_ENABLED", "true"));
+    public static final int INGEST_POLL_INTERVAL_SECONDS = Integer.parseInt(System.getenv().getOrDefault("INGEST_POLL_INTERVAL_SECONDS", "5"));
 
     // Simplified JSON prompt for metadata extraction from academic papers
     public static final String METADATA_EXTRACTION_JSON = """
@@ -75,4 +155,23 @@ public class Config {
             "weekpoint": "从不同角度尽可能详细介绍本论文已有研究的不足之处",
             "keyword": "文本的关键词，用;分隔",
             "fullSummary": "提取论文完整摘要"}""";
+
+    private static List<String> urls(String value) {
+        List<String> urls = new ArrayList<>();
+        for (String url : value.split(",")) {
+            url = url.trim().replaceAll("/+$", "");
+            if (!url.isEmpty()) {
+                urls.add(url);
+            }
+        }
+        return Collections.unmodifiableList(urls);
+    }
+
+    private static String defaultNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node-" + UUID.randomUUID();
+        }
+    }
 }
\ No newline at end of file
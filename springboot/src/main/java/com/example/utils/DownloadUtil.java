@@ -0,0 +1,204 @@
+package com.example.utils;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves files from disk without loading them into the heap.
+ * Supports single byte ranges (so PDF viewers can fetch pages progressively),
+ * and answers repeat requests with 304 based on ETag / Last-Modified.
+ * On Tomcat, larger bodies are handed to the connector's sendfile so the kernel copies them to the socket;
+ * elsewhere they are streamed with FileChannel.transferTo through the response output stream.
+ */
+public class DownloadUtil {
+
+    private static final Pattern BYTE_RANGE = Pattern.compile("^bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)\\s*$", Pattern.CASE_INSENSITIVE);
+
+    // Request attributes of Tomcat's sendfile support (org.apache.catalina.Globals)
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Same threshold as Tomcat's DefaultServlet: below it, setting up sendfile costs more than copying
+    static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    /**
+     * Write a file to the response
+     * @param downloadName file name offered to the browser in Content-Disposition
+     */
+    public static void send(HttpServletRequest request, HttpServletResponse response,
+                            File file, String downloadName) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified() / 1000 * 1000; // HTTP dates have second precision
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        Matcher range = rangeOf(request);
+        if (range != null && rangeApplies(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            start = bounds[0];
+            end = bounds[1];
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+
+        MediaType type = MediaTypeFactory.getMediaType(file.getName()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setContentType(type.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + URLEncoder.encode(downloadName, "UTF-8"));
+        response.setContentLengthLong(end - start + 1);
+
+        if (end - start + 1 >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // The connector writes the file after the servlet returns; nothing may be written to the body here
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1); // exclusive
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matchesEtag(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * A Range request only applies if the If-Range validator (if any) still matches the file
+     */
+    private static boolean rangeApplies(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && lastModified <= date;
+    }
+
+    private static boolean matchesEtag(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The Range header if it is a single byte range, otherwise null. Other range units, multiple ranges and
+     * malformed headers are ignored and the whole file is sent, as RFC 7233 allows.
+     */
+    private static Matcher rangeOf(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) {
+            return null;
+        }
+        Matcher range = BYTE_RANGE.matcher(header);
+        if (!range.matches()) {
+            return null;
+        }
+        String first = range.group(1);
+        String last = range.group(2);
+        if (first.isEmpty() ? last.isEmpty() : !last.isEmpty() && position(last) < position(first)) {
+            return null;
+        }
+        return range;
+    }
+
+    /**
+     * Resolve a single "bytes=start-end", "bytes=start-" or "bytes=-suffix" range
+     * @return inclusive {start, end}, or null if the range cannot be satisfied
+     */
+    private static long[] parseRange(Matcher range, long length) {
+        String first = range.group(1);
+        String last = range.group(2);
+        long start;
+        long end = length - 1;
+        if (first.isEmpty()) {
+            long suffix = position(last);
+            if (suffix == 0) {
+                return null;
+            }
+            start = Math.max(0, length - suffix);
+        } else {
+            start = position(first);
+            if (!last.isEmpty()) {
+                end = Math.min(position(last), length - 1);
+            }
+        }
+        if (start >= length) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    /**
+     * Digits of a range position; values beyond the range of long are past the end of any file
+     */
+    private static long position(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
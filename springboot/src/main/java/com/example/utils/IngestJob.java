@@ -0,0 +1,137 @@
+package com.example.utils;
+
+import com.example.entity.ProcessingStatus;
+import com.example.utils.bigmodel.LlmUsage;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of one paper while it moves through the ingest pipeline stages
+ */
+public class IngestJob {
+    private final String taskId;
+    private final String filePath;
+    private final Runnable onFinished;                  // Called once when the job leaves the pipeline
+    private final Long leaseToken;                      // Fencing token of the claim, null if not leased
+    private final File outputBase;                      // Output target without extension
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final AtomicInteger openBranches = new AtomicInteger();
+    private volatile Exception branchFailure;          // First failure among parallel stages
+    private final LlmUsage llmUsage = new LlmUsage();   // LLM calls of this run, stored with the status at the end
+    // Custom concept results; written only by the concept stage and merged into the status at the join,
+    // so the parallel metadata stage can keep using the status without locking
+    private final ProcessingStatus conceptResults = new ProcessingStatus();
+
+    private ProcessingStatus status;                    // Loaded by the first stage
+    private File pdfFile;
+    private File txtFile;
+    private String metadataText;                        // Text excerpt sent to the LLM
+    private boolean fullTextPending;                    // Full .txt still has to be extracted
+
+    public IngestJob(String taskId, String filePath, Long leaseToken, Runnable onFinished) {
+        this.taskId = taskId;
+        this.filePath = filePath;
+        this.leaseToken = leaseToken;
+        this.onFinished = onFinished;
+        this.outputBase = PaperConverter.outputBaseOf(new File(filePath));
+    }
+
+    /**
+     * Mark the job as done (successfully or not); only the first call runs the callback
+     */
+    public void finish() {
+        if (finished.compareAndSet(false, true) && onFinished != null) {
+            onFinished.run();
+        }
+    }
+
+    /**
+     * Split the job into parallel stages that meet again in a later stage
+     */
+    public void fork(int branches) {
+        openBranches.set(branches);
+    }
+
+    /**
+     * @return true for the last parallel stage to arrive at the join
+     */
+    public boolean joinBranch() {
+        return openBranches.decrementAndGet() == 0;
+    }
+
+    public synchronized void failBranch(Exception e) {
+        if (branchFailure == null) {
+            branchFailure = e;
+        }
+    }
+
+    public Exception getBranchFailure() {
+        return branchFailure;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public Long getLeaseToken() {
+        return leaseToken;
+    }
+
+    public ProcessingStatus getConceptResults() {
+        return conceptResults;
+    }
+
+    public LlmUsage getLlmUsage() {
+        return llmUsage;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public ProcessingStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ProcessingStatus status) {
+        this.status = status;
+    }
+
+    public File getOutputBase() {
+        return outputBase;
+    }
+
+    public File getPdfFile() {
+        return pdfFile;
+    }
+
+    public void setPdfFile(File pdfFile) {
+        this.pdfFile = pdfFile;
+    }
+
+    public File getTxtFile() {
+        return txtFile;
+    }
+
+    public void setTxtFile(File txtFile) {
+        this.txtFile = txtFile;
+    }
+
+    public String getMetadataText() {
+        return metadataText;
+    }
+
+    public void setMetadataText(String metadataText) {
+        this.metadataText = metadataText;
+    }
+
+    public boolean isFullTextPending() {
+        return fullTextPending;
+    }
+
+    public void setFullTextPending(boolean fullTextPending) {
+        this.fullTextPending = fullTextPending;
+    }
+}
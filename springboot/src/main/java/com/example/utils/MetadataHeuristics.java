@@ -0,0 +1,298 @@
+package com.example.utils;
+
+import com.example.utils.bigmodel.PromptBuilder;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule-based metadata extraction that runs before the LLM.
+ * Finds what can be read off a well-formed paper exactly (DOI, year, keywords, abstract, journal line,
+ * affiliations, PDF Info/XMP title and author) and gives every field a confidence between 0 and 1;
+ * only fields below METADATA_HEURISTIC_CONFIDENCE are left to the LLM.
+ */
+public class MetadataHeuristics {
+
+    private static final int TITLE_PAGE_LINES = 40;
+    private static final int ABSTRACT_MAX_LINES = 40;
+
+    private static final Pattern DOI = Pattern.compile("\\b(10\\.\\d{4,9}/[^\\s\"<>]+)");
+    private static final Pattern DOI_LABEL = Pattern.compile("doi\\s*号?\\s*[:：]?\\s*(https?://(dx\\.)?doi\\.org/)?10\\.", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VOLUME_ISSUE = Pattern.compile(
+            "^(.{2,40}?)[\\s,，.]*(第\\s*\\d+\\s*卷|vol(ume)?\\.?\\s*\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VOLUME_YEAR = Pattern.compile(
+            "(第\\s*\\d+\\s*卷.{0,20}?|vol(ume)?\\.?\\s*\\d+.{0,30}?)((19|20)\\d{2})", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CHINESE_DATE = Pattern.compile("((19|20)\\d{2})\\s*年\\s*\\d{1,2}\\s*月");
+    private static final Pattern COPYRIGHT_YEAR = Pattern.compile("(©|\\(c\\)|copyright)\\s*((19|20)\\d{2})", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INSTITUTION = Pattern.compile(
+            "大学|学院|研究所|研究院|研究中心|实验室|university|institute|college|laborator|department|academy", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ADDRESS = Pattern.compile("\\d{6}|中国|china|usa|germany|japan|korea|\\buk\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SECTION_HEADING = Pattern.compile(
+            "^\\s*((0|1)[.、\\s]\\s*)?(引\\s*言|前\\s*言|绪\\s*论|introduction)\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JUNK_TITLE = Pattern.compile(
+            "^(microsoft\\s+word|untitled|title|.*\\.(docx?|pdf|tex|dvi|wps))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern XMP_TITLE = Pattern.compile("<dc:title>.*?<rdf:li[^>]*>(.*?)</rdf:li>", Pattern.DOTALL);
+    private static final Pattern XMP_CREATOR = Pattern.compile("<dc:creator>(.*?)</dc:creator>", Pattern.DOTALL);
+    private static final Pattern XMP_ITEM = Pattern.compile("<rdf:li[^>]*>(.*?)</rdf:li>", Pattern.DOTALL);
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("\\s*[;；,，、]\\s*");
+    private static final Pattern LEADING_MARKER = Pattern.compile("^([(（]?\\d{1,2}[)）.、]?|[*†‡]+|[a-z][)）.])\\s*");
+
+    /**
+     * Extracted values with their confidence
+     */
+    public static class Result {
+        private final Map<String, String> values = new LinkedHashMap<>();
+        private final Map<String, Double> confidence = new LinkedHashMap<>();
+
+        void put(String field, String value, double score) {
+            if (value == null || value.trim().isEmpty() || score <= getConfidence(field)) {
+                return;
+            }
+            values.put(field, value.trim());
+            confidence.put(field, score);
+        }
+
+        public String getValue(String field) {
+            return values.get(field);
+        }
+
+        public double getConfidence(String field) {
+            return confidence.getOrDefault(field, 0.0);
+        }
+
+        @Override
+        public String toString() {
+            return confidence.toString();
+        }
+    }
+
+    /**
+     * @param pdfFile source of PDF Info/XMP fields, may be null
+     * @param text text of the first pages
+     */
+    public static Result extract(File pdfFile, String text) {
+        Result result = new Result();
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\\r?\\n")) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim());
+            }
+        }
+        List<String> titlePage = lines.subList(0, Math.min(lines.size(), TITLE_PAGE_LINES));
+        String titlePageText = String.join("\n", titlePage);
+
+        extractDoi(result, text);
+        extractYear(result, titlePageText);
+        extractSource(result, titlePage);
+        extractOrgan(result, titlePage);
+        extractKeywords(result, lines);
+        extractAbstract(result, lines);
+        if (pdfFile != null && pdfFile.isFile()) {
+            extractDocumentInfo(result, pdfFile, normalize(titlePageText));
+        }
+        return result;
+    }
+
+    private static void extractDoi(Result result, String text) {
+        Matcher matcher = DOI.matcher(text);
+        if (matcher.find()) {
+            String doi = matcher.group(1).replaceAll("[.,;:)）。，；]+$", "");
+            result.put("doi", doi, DOI_LABEL.matcher(text).find() ? 0.95 : 0.85);
+        }
+    }
+
+    private static void extractYear(Result result, String titlePage) {
+        Matcher matcher = VOLUME_YEAR.matcher(titlePage);
+        if (matcher.find()) {
+            result.put("year", matcher.group(3), 0.9);
+        }
+        matcher = CHINESE_DATE.matcher(titlePage);
+        if (matcher.find()) {
+            result.put("year", matcher.group(1), 0.85);
+        }
+        matcher = COPYRIGHT_YEAR.matcher(titlePage);
+        if (matcher.find()) {
+            result.put("year", matcher.group(2), 0.85);
+        }
+    }
+
+    /**
+     * Journal name from a "计算机学报 第43卷 第5期" / "Journal of X, Vol. 12" header line
+     */
+    private static void extractSource(Result result, List<String> titlePage) {
+        for (String line : titlePage) {
+            Matcher matcher = VOLUME_ISSUE.matcher(line);
+            if (matcher.find()) {
+                String source = matcher.group(1).replaceAll("[\\s,，.(（]*((19|20)\\d{2})?[\\s,，.)）]*$", "");
+                if (source.length() >= 2 && !source.matches("[\\d\\s]+")) {
+                    result.put("source", source, 0.85);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Affiliation lines of the title page; a postcode or country on the line makes it near certain
+     */
+    private static void extractOrgan(Result result, List<String> titlePage) {
+        Set<String> organs = new LinkedHashSet<>();
+        boolean withAddress = false;
+        for (String line : titlePage) {
+            if (line.length() > 120 || line.endsWith("。") || !INSTITUTION.matcher(line).find()
+                    || PromptBuilder.ABSTRACT_HEADING.matcher(line).find()) {
+                continue;
+            }
+            String organ = LEADING_MARKER.matcher(line).replaceFirst("");
+            if (organ.matches("^[(（].*[)）]$")) {
+                organ = organ.substring(1, organ.length() - 1).trim();
+            }
+            organs.add(organ);
+            withAddress |= ADDRESS.matcher(line).find();
+            if (organs.size() == 3) {
+                break;
+            }
+        }
+        if (!organs.isEmpty()) {
+            result.put("organ", String.join("; ", organs), withAddress ? 0.85 : 0.7);
+        }
+    }
+
+    private static void extractKeywords(Result result, List<String> lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            Matcher heading = PromptBuilder.KEYWORDS_HEADING.matcher(lines.get(i));
+            if (!heading.find()) {
+                continue;
+            }
+            String rest = stripSeparator(lines.get(i).substring(heading.end()));
+            if (rest.isEmpty() && i + 1 < lines.size()) {
+                rest = lines.get(i + 1);
+            }
+            List<String> keywords = new ArrayList<>();
+            for (String keyword : LIST_SEPARATOR.split(rest)) {
+                if (!keyword.trim().isEmpty()) {
+                    keywords.add(keyword.trim().replaceAll("[.。]$", ""));
+                }
+            }
+            if (!keywords.isEmpty()) {
+                result.put("keyword", String.join("; ", keywords), keywords.size() >= 2 ? 0.9 : 0.6);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The abstract runs from its heading to the keywords, the introduction, or a maximum number of lines
+     */
+    private static void extractAbstract(Result result, List<String> lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            Matcher heading = PromptBuilder.ABSTRACT_HEADING.matcher(lines.get(i));
+            if (!heading.find()) {
+                continue;
+            }
+            StringBuilder summary = new StringBuilder(stripSeparator(lines.get(i).substring(heading.end())));
+            for (int j = i + 1; j < Math.min(lines.size(), i + ABSTRACT_MAX_LINES); j++) {
+                String line = lines.get(j);
+                if (PromptBuilder.KEYWORDS_HEADING.matcher(line).find() || SECTION_HEADING.matcher(line).matches()) {
+                    break;
+                }
+                appendLine(summary, line);
+            }
+            String value = summary.toString().trim();
+            result.put("summary", value, PromptBuilder.estimateTokens(value) >= 50 ? 0.9 : 0.5);
+            return;
+        }
+    }
+
+    /**
+     * Title and author from the PDF Info dictionary or XMP; trusted only if they also appear on the title page,
+     * since many tools leave file names or template text there
+     */
+    private static void extractDocumentInfo(Result result, File pdfFile, String titlePage) {
+        String title = null;
+        String author = null;
+        try (PDDocument document = PDDocument.load(pdfFile)) {
+            PDDocumentInformation info = document.getDocumentInformation();
+            title = info.getTitle();
+            author = info.getAuthor();
+            PDMetadata metadata = document.getDocumentCatalog().getMetadata();
+            if (metadata != null && (isBlank(title) || isBlank(author))) {
+                String xmp;
+                try (InputStream in = metadata.exportXMPMetadata()) {
+                    xmp = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                Matcher matcher = XMP_TITLE.matcher(xmp);
+                if (isBlank(title) && matcher.find()) {
+                    title = matcher.group(1);
+                }
+                matcher = XMP_CREATOR.matcher(xmp);
+                if (isBlank(author) && matcher.find()) {
+                    List<String> creators = new ArrayList<>();
+                    Matcher item = XMP_ITEM.matcher(matcher.group(1));
+                    while (item.find()) {
+                        creators.add(item.group(1).trim());
+                    }
+                    author = String.join("; ", creators);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("读取PDF元数据失败: " + e.getMessage());
+            return;
+        }
+
+        if (!isBlank(title) && title.trim().length() >= 6 && !JUNK_TITLE.matcher(title.trim()).find()) {
+            result.put("title", title, titlePage.contains(normalize(title)) ? 0.9 : 0.5);
+        }
+        if (!isBlank(author)) {
+            List<String> names = new ArrayList<>();
+            boolean onTitlePage = false;
+            for (String name : LIST_SEPARATOR.split(author.replaceAll("\\s+(and|&)\\s+", ";"))) {
+                if (!name.trim().isEmpty()) {
+                    names.add(name.trim());
+                    onTitlePage |= titlePage.contains(normalize(name));
+                }
+            }
+            result.put("author", String.join("; ", names), onTitlePage ? 0.85 : 0.4);
+        }
+    }
+
+    private static void appendLine(StringBuilder text, String line) {
+        if (text.length() > 0 && !isCjkBoundary(text.charAt(text.length() - 1), line.charAt(0))) {
+            text.append(' ');
+        }
+        text.append(line);
+    }
+
+    /**
+     * Wrapped CJK text is joined without a space
+     */
+    private static boolean isCjkBoundary(char before, char after) {
+        return Character.UnicodeScript.of(before) == Character.UnicodeScript.HAN
+                || Character.UnicodeScript.of(after) == Character.UnicodeScript.HAN;
+    }
+
+    private static String stripSeparator(String text) {
+        return text.replaceFirst("^[\\s:：—\\-.]+", "").trim();
+    }
+
+    private static String normalize(String text) {
+        return text.replaceAll("\\s+", "").toLowerCase();
+    }
+
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.utils;
+
+import cn.hutool.core.io.FileUtil;
+import com.example.utils.Caj2pdf.Caj2pdf;
+import com.example.utils.pdf2docx.Pdf2docx;
+import com.example.utils.pdf2txt.TextExtractors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Per-file conversion of a single uploaded paper.
+ * Only the uploaded file is touched, so the cost of one upload does not depend
+ * on how many papers are already stored in the upload directory.
+ */
+public class PaperConverter {
+
+    /**
+     * Produce the pdf of an uploaded paper next to the given output target.
+     * The docx is not produced here, see {@link #convertDocx}.
+     * @param uploadedFile the uploaded .pdf or .caj file
+     * @param outputBase output path without extension, e.g. /manager/upload/paper_xxx
+     * @return the pdf
+     */
+    public static File convertToPdf(File uploadedFile, File outputBase) throws IOException, InterruptedException {
+        File pdf = new File(outputBase.getPath() + ".pdf");
+
+        String ext = FileUtil.extName(uploadedFile).toLowerCase();
+        if ("caj".equals(ext)) {
+            pdf = Caj2pdf.convertFile(uploadedFile, pdf);
+        } else if ("pdf".equals(ext)) {
+            if (!uploadedFile.getAbsoluteFile().equals(pdf.getAbsoluteFile())) {
+                FileUtil.copy(uploadedFile, pdf, true);
+            }
+        } else {
+            throw new IOException("不支持的文件类型: " + uploadedFile.getName());
+        }
+        return pdf;
+    }
+
+    /**
+     * Produce the docx of a pdf. Only needed for download, so it runs on demand rather than during ingest.
+     */
+    public static File convertDocx(File pdf, File docx) throws IOException, InterruptedException {
+        return Pdf2docx.convertFile(pdf, docx);
+    }
+
+    /**
+     * Extract the text of a converted pdf into the .txt of the output target.
+     * The text is written to a .part file first, so an existing .txt is always complete.
+     * Each call uses its own .part file: the pipeline and a download may extract the same text at once.
+     */
+    public static File extractText(File pdf, File outputBase) throws IOException, InterruptedException {
+        File txt = new File(outputBase.getPath() + ".txt");
+        File part = File.createTempFile(txt.getName() + ".", ".part", txt.getAbsoluteFile().getParentFile());
+        try {
+            TextExtractors.get().extract(pdf, part);
+            Files.move(part.toPath(), txt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(part.toPath());
+        }
+        return txt;
+    }
+
+    /**
+     * Extract only the first pages of a pdf, stopping as soon as maxChars characters are available.
+     * Unlike the full .txt, line and page breaks are kept: prompt fitting and the metadata heuristics work per line.
+     * @return at most maxChars characters, lines separated by '\n'
+     */
+    public static String extractTextPrefix(File pdf, int maxChars) throws IOException, InterruptedException {
+        StringBuilder text = new StringBuilder();
+        TextExtractors.get().extractPages(pdf, (page, pageText) -> {
+            if (page > 1) {
+                text.append('\n');
+            }
+            text.append(pageText);
+            return text.length() < maxChars;
+        });
+        String content = text.toString().replace("\r\n", "\n").replace('\r', '\n');
+        return content.length() > maxChars ? content.substring(0, maxChars) : content;
+    }
+
+    /**
+     * Output target for an uploaded file: same directory, same base name
+     */
+    public static File outputBaseOf(File uploadedFile) {
+        return new File(uploadedFile.getAbsoluteFile().getParentFile(), FileUtil.mainName(uploadedFile));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.utils;
+
+import cn.hutool.core.util.HexUtil;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Streams multipart uploads to disk through a fixed-size buffer, so heap use per upload does not depend
+ * on the file size. The SHA-256 and size are computed on the way; the target only appears once complete.
+ */
+public class UploadUtil {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Save an uploaded file
+     * @param file the uploaded file
+     * @param target where to store it; parent directories are created
+     * @return size and SHA-256 of the stored file
+     * @throws IOException if writing fails or the file is larger than Config.UPLOAD_MAX_BYTES
+     */
+    public static SavedFile save(MultipartFile file, File target) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return save(in, target);
+        }
+    }
+
+    /**
+     * Save a stream, e.g. one entry of an uploaded ZIP archive; the stream is not closed
+     * @see #save(MultipartFile, File)
+     */
+    public static SavedFile save(InputStream in, File target) throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建上传目录: " + dir.getAbsolutePath());
+        }
+        MessageDigest digest = sha256();
+        Path part = new File(target.getPath() + ".part").toPath();
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(part)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > Config.UPLOAD_MAX_BYTES) {
+                    throw new IOException("文件超过大小限制: " + Config.UPLOAD_MAX_BYTES + " 字节");
+                }
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        Files.move(part, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return new SavedFile(target, size, HexUtil.encodeHexStr(digest.digest()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM ships SHA-256
+        }
+    }
+
+    /**
+     * A stored upload
+     */
+    public static class SavedFile {
+        private final File file;
+        private final long size;
+        private final String sha256;
+
+        public SavedFile(File file, long size, String sha256) {
+            this.file = file;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+    }
+}
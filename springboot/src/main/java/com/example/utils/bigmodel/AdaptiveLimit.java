@@ -0,0 +1,182 @@
+package com.example.utils.bigmodel;
+
+import com.example.utils.Config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit of one Ollama server, adjusted additive-increase/multiplicative-decrease.
+ * While the limit is fully used and calls stay fast it grows by one per window of calls; it is cut when the
+ * server shows overload: generation per token slows down against the best observed (requests compete for
+ * the CPU), requests wait inside Ollama for a large share of their time (more sent than OLLAMA_NUM_PARALLEL),
+ * or calls time out. Per-token time is used instead of raw latency because answers differ in length.
+ */
+class AdaptiveLimit {
+    // The baseline drifts towards recent samples so a new model or new hardware is picked up
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    private final AtomicLong increases = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double baselineNanosPerToken = -1;
+    private long lastDecrease = System.nanoTime();
+
+    AdaptiveLimit(int initialLimit) {
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Wait until the call fits into the limit
+     * @return null if it did not within the timeout
+     */
+    Permit acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+            return new Permit(System.nanoTime(), inFlight >= currentLimit() || waiting > 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A call completed
+     * @param nanosPerToken generation time per output token, negative if unknown
+     * @param queueShare share of the call spent waiting inside Ollama, negative if unknown
+     */
+    void onSuccess(Permit permit, double nanosPerToken, double queueShare) {
+        if (!Config.OLLAMA_ADAPTIVE_CONCURRENCY) {
+            return;
+        }
+        lock.lock();
+        try {
+            boolean slow = false;
+            if (nanosPerToken > 0) {
+                if (baselineNanosPerToken <= 0 || nanosPerToken < baselineNanosPerToken) {
+                    baselineNanosPerToken = nanosPerToken;
+                } else {
+                    baselineNanosPerToken += (nanosPerToken - baselineNanosPerToken) * BASELINE_DRIFT;
+                    slow = nanosPerToken > baselineNanosPerToken * Config.OLLAMA_AIMD_SLOWDOWN;
+                }
+            }
+            boolean queued = queueShare > Config.OLLAMA_AIMD_QUEUE_SHARE;
+            if (slow || queued) {
+                decrease(permit);
+            } else if (permit.saturated && limit < Config.OLLAMA_MAX_IN_FLIGHT_LIMIT) {
+                // About one step per window of `limit` calls
+                limit = Math.min(Config.OLLAMA_MAX_IN_FLIGHT_LIMIT, limit + 1 / limit);
+                increases.incrementAndGet();
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A call timed out or the server refused it as overloaded
+     */
+    void onOverload(Permit permit) {
+        if (!Config.OLLAMA_ADAPTIVE_CONCURRENCY) {
+            return;
+        }
+        lock.lock();
+        try {
+            decrease(permit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Only calls started after the previous cut may cut again, so one overload episode costs one step
+     */
+    private void decrease(Permit permit) {
+        if (permit.start - lastDecrease < 0) {
+            return;
+        }
+        limit = Math.max(Config.OLLAMA_MIN_IN_FLIGHT, limit * Config.OLLAMA_AIMD_BACKOFF);
+        lastDecrease = System.nanoTime();
+        decreases.incrementAndGet();
+    }
+
+    private int currentLimit() {
+        return Math.max(1, (int) limit);
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double getBaselineNanosPerToken() {
+        lock.lock();
+        try {
+            return baselineNanosPerToken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getIncreases() {
+        return increases.get();
+    }
+
+    long getDecreases() {
+        return decreases.get();
+    }
+
+    static class Permit {
+        private final long start;
+        // The limit was fully used when this call started; only then is there a reason to raise it
+        private final boolean saturated;
+
+        Permit(long start, boolean saturated) {
+            this.start = start;
+            this.saturated = saturated;
+        }
+    }
+}
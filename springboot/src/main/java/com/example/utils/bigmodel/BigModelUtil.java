@@ -1,100 +1,230 @@
 package com.example.utils.bigmodel;
 
+import cn.hutool.core.util.HexUtil;
 import com.example.utils.Config;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
-import java.time.Duration;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Predicate;
 
 /**
  * LLM utility - uses local Ollama with Ministral-3:3b
  * Optimized for speed and accuracy on end-user hardware
  */
 public class BigModelUtil {
-    private static final String OLLAMA_BASE_URL = Config.OLLAMA_BASE_URL;
+    private static final String OLLAMA_BASE_URL = String.join(", ", Config.OLLAMA_BASE_URLS);
     private static final String OLLAMA_MODEL = Config.OLLAMA_MODEL;
     
-    // Reduced timeout for faster failure detection (3 minutes max)
-    private static final int SOCKET_TIMEOUT_MS = (int) Duration.ofMinutes(3).toMillis();
-    private static final int CONNECT_TIMEOUT_MS = (int) Duration.ofSeconds(15).toMillis();
-    
-    static {
-        Unirest.setTimeouts(CONNECT_TIMEOUT_MS, SOCKET_TIMEOUT_MS);
-    }
+    private static final String SYSTEM_PROMPT =
+            "You are a helpful assistant that always responds with valid JSON. " +
+            "Never use markdown code blocks (```json). " +
+            "Always return a single JSON object, not an array. " +
+            "Use empty strings \"\" for unknown values.";
     
     private static final Gson gson = new Gson();
     
+    // Performance options for 3B model
+    private static final JsonObject OPTIONS = buildOptions();
+    
+    // Model, options and system message never change, so that part of the request body is serialized once
+    private static final String CHAT_REQUEST_PREFIX = buildChatRequestPrefix();
+    
+    // Chunks still read after the JSON is complete: with a schema Ollama stops right there, and its
+    // final chunk carries the token counts and timings
+    private static final int TRAILING_CHUNKS = 3;
+    
+    // Everything besides the user prompt that determines the answer; part of every cache key
+    private static final String CACHE_KEY_PREFIX = OLLAMA_MODEL + "\n" + OPTIONS + "\n" + SYSTEM_PROMPT + "\n";
+    
+    /**
+     * Receives the number of tokens generated so far while a response streams in
+     */
+    public interface StreamListener {
+        void onTokens(int tokens);
+    }
+    
     /**
      * Generate text using Ollama
      */
     public static String ollamaTextGeneration(String content) throws Exception {
-        List<Map<String, String>> messages = new ArrayList<>();
-        
-        // System message for JSON output
-        Map<String, String> systemMsg = new HashMap<>();
-        systemMsg.put("role", "system");
-        systemMsg.put("content", 
-            "You are a helpful assistant that always responds with valid JSON. " +
-            "Never use markdown code blocks (```json). " +
-            "Always return a single JSON object, not an array. " +
-            "Use empty strings \"\" for unknown values.");
-        messages.add(systemMsg);
-        
-        // User message
-        Map<String, String> userMsg = new HashMap<>();
-        userMsg.put("role", "user");
-        userMsg.put("content", content);
-        messages.add(userMsg);
-        
-        return sendRequest(messages);
+        return ollamaTextGeneration(content, null);
     }
     
     /**
-     * Send request to Ollama API
+     * Generate text using Ollama, reporting progress to the listener (only in streaming mode)
      */
-    private static String sendRequest(List<Map<String, String>> messages) throws Exception {
-        JsonObject requestBody = new JsonObject();
-        requestBody.add("model", gson.toJsonTree(OLLAMA_MODEL));
-        requestBody.add("messages", gson.toJsonTree(messages));
-        requestBody.addProperty("stream", false);
+    public static String ollamaTextGeneration(String content, StreamListener listener) throws Exception {
+        return ollamaTextGeneration(content, null, listener);
+    }
+    
+    /**
+     * Generate text using Ollama
+     * @param format JSON schema the response must follow (Ollama structured outputs), or null for free-form JSON
+     * @param listener receives progress in streaming mode, may be null
+     */
+    public static String ollamaTextGeneration(String content, JsonObject format, StreamListener listener) throws Exception {
+        return ollamaTextGeneration(content, format, listener, null, null);
+    }
+    
+    /**
+     * Generate text using Ollama, recording token counts and timings of the call
+     * @param usage per-task totals the call is added to, may be null
+     * @param stage what the call is for (metadata, concepts, concept N ...), the key of its metrics
+     */
+    public static String ollamaTextGeneration(String content, JsonObject format, StreamListener listener,
+                                              LlmUsage usage, String stage) throws Exception {
+        return ollamaTextGeneration(content, format, listener, usage, stage, null);
+    }
+    
+    /**
+     * Generate text using Ollama; the response is only cached if it is a JSON object the validator accepts,
+     * so an answer the caller rejects is asked for again next time instead of being replayed for 30 days
+     * @param validator decides whether the parsed answer is usable, null to cache any JSON object
+     */
+    public static String ollamaTextGeneration(String content, JsonObject format, StreamListener listener,
+                                              LlmUsage usage, String stage, Predicate<JsonObject> validator) throws Exception {
+        if (stage == null) {
+            stage = "other";
+        }
+        if (!Config.OLLAMA_STRUCTURED_OUTPUT) {
+            format = null;
+        }
+        String formatJson = format == null ? null : gson.toJson(format);
+        String cacheKey = cacheKey(formatJson, content);
+        String cached = LlmResponseCache.get(cacheKey);
+        if (cached != null && isCacheable(cached, validator)) {
+            System.out.println("命中LLM缓存，跳过Ollama调用 (长度: " + cached.length() + ")");
+            LlmMetrics.recordCached(stage);
+            if (usage != null) {
+                usage.addCached(stage);
+            }
+            return cached;
+        }
         
-        // Performance options for 3B model
+        String requestBody = CHAT_REQUEST_PREFIX + userMessage(content) + "]"
+                + (formatJson == null ? "" : ",\"format\":" + formatJson) + "}";
+        OllamaCallMetrics call = new OllamaCallMetrics();
+        String result = sendRequest(requestBody, listener, call);
+        recordCall(stage, usage, call, content);
+        if (isCacheable(result, validator)) {
+            LlmResponseCache.put(cacheKey, result);
+        }
+        return result;
+    }
+    
+    private static boolean isCacheable(String response, Predicate<JsonObject> validator) {
+        JsonObject json = parseJsonObject(response);
+        return json != null && (validator == null || validator.test(json));
+    }
+    
+    /**
+     * Parse a response as a JSON object, tolerating markdown code fences around it
+     * @return null if the response is not a JSON object
+     */
+    public static JsonObject parseJsonObject(String response) {
+        if (response == null) {
+            return null;
+        }
+        String cleaned = response.trim();
+        if (cleaned.startsWith("```json")) {
+            cleaned = cleaned.substring(7);
+        }
+        if (cleaned.startsWith("```")) {
+            cleaned = cleaned.substring(3);
+        }
+        if (cleaned.endsWith("```")) {
+            cleaned = cleaned.substring(0, cleaned.length() - 3);
+        }
+        try {
+            JsonElement json = JsonParser.parseString(cleaned.trim());
+            return json.isJsonObject() ? json.getAsJsonObject() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+    
+    private static void recordCall(String stage, LlmUsage usage, OllamaCallMetrics call, String content) {
+        long promptTokens = call.getPromptEvalCount() >= 0 ? call.getPromptEvalCount()
+                : PromptBuilder.estimateTokens(SYSTEM_PROMPT) + PromptBuilder.estimateTokens(content);
+        LlmMetrics.record(stage, call, promptTokens);
+        if (usage != null) {
+            usage.add(stage, call, promptTokens);
+        }
+        System.out.println("LLM调用 [" + stage + "] 节点 " + call.getServer() + ": 输入 " + promptTokens
+                + (call.getPromptEvalCount() >= 0 ? "" : "(估算)") + " token, 输出 " + call.getEvalCount()
+                + " token, 耗时 " + call.getLatency() / 1_000_000 + " ms"
+                + (call.getEvalRate() > 0 ? String.format(", 生成速度 %.1f token/s", call.getEvalRate()) : ""));
+    }
+    
+    private static String cacheKey(String format, String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(CACHE_KEY_PREFIX.getBytes(StandardCharsets.UTF_8));
+            if (format != null) {
+                digest.update((format + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update(content.getBytes(StandardCharsets.UTF_8));
+            return HexUtil.encodeHexStr(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static JsonObject buildOptions() {
         JsonObject options = new JsonObject();
         options.addProperty("temperature", 0.7);
         options.addProperty("top_p", 0.9);
         options.addProperty("num_predict", 2048); // Max tokens to generate
-        requestBody.add("options", options);
+        return options;
+    }
+    
+    private static String buildChatRequestPrefix() {
+        JsonObject requestBody = new JsonObject();
+        requestBody.addProperty("model", OLLAMA_MODEL);
+        requestBody.addProperty("stream", Config.OLLAMA_STREAM);
+        // How long Ollama keeps the model loaded after this request
+        requestBody.addProperty("keep_alive", Config.OLLAMA_KEEP_ALIVE);
+        requestBody.add("options", OPTIONS);
+        
+        JsonObject systemMsg = new JsonObject();
+        systemMsg.addProperty("role", "system");
+        systemMsg.addProperty("content", SYSTEM_PROMPT);
         
+        String head = gson.toJson(requestBody);
+        return head.substring(0, head.length() - 1) + ",\"messages\":[" + gson.toJson(systemMsg) + ",";
+    }
+    
+    private static String userMessage(String content) {
+        return "{\"role\":\"user\",\"content\":" + gson.toJson(content) + "}";
+    }
+    
+    /**
+     * Send request to Ollama API
+     */
+    private static String sendRequest(String requestBody, StreamListener listener, OllamaCallMetrics call) throws Exception {
         System.out.println("调用Ollama API: " + OLLAMA_BASE_URL + "/api/chat");
         System.out.println("模型: " + OLLAMA_MODEL);
         
         try {
             System.out.println("发送 HTTP POST 请求...");
-            HttpResponse<String> response = Unirest.post(OLLAMA_BASE_URL + "/api/chat")
-                    .header("Content-Type", "application/json")
-                    .body(requestBody.toString())
-                    .asString();
-            
-            System.out.println("收到 HTTP 响应，状态码: " + response.getStatus());
-            
-            if (response.getStatus() != 200) {
-                String errorMsg = "Ollama API错误: HTTP " + response.getStatus();
-                if (response.getBody() != null && !response.getBody().isEmpty()) {
-                    errorMsg += " - " + response.getBody();
-                }
-                throw new Exception(errorMsg);
+            if (Config.OLLAMA_STREAM) {
+                String result = streamResponse(requestBody, listener, call);
+                System.out.println("流式响应完成，内容长度: " + result.length());
+                return result;
             }
+            String body = OllamaClient.post("/api/chat", requestBody, call);
             
-            System.out.println("Ollama响应: " + response.getStatus() + " OK");
-            System.out.println("响应体长度: " + (response.getBody() != null ? response.getBody().length() : "null"));
+            System.out.println("Ollama响应: 200 OK");
+            System.out.println("响应体长度: " + body.length());
             
-            String result = parseResponse(response.getBody());
+            String result = parseResponse(body);
             System.out.println("解析后内容长度: " + (result != null ? result.length() : "null"));
             
             return result;
@@ -110,6 +240,49 @@ public class BigModelUtil {
         }
     }
     
+    /**
+     * Read a streamed chat response chunk by chunk. Reading stops shortly after the model has closed
+     * the JSON object, instead of waiting for whatever it generates after it.
+     */
+    private static String streamResponse(String requestBody, StreamListener listener, OllamaCallMetrics call) throws Exception {
+        StringBuilder content = new StringBuilder();
+        JsonCompletionDetector detector = new JsonCompletionDetector();
+        int[] tokens = {0};
+        // Chunks read since the JSON was complete, -1 before
+        int[] trailing = {-1};
+        OllamaClient.postStreaming("/api/chat", requestBody, line -> {
+            JsonObject chunk = gson.fromJson(line, JsonObject.class);
+            if (chunk.has("error")) {
+                throw new IOException("Ollama API错误: " + chunk.get("error").getAsString());
+            }
+            if (chunk.has("done") && chunk.get("done").getAsBoolean()) {
+                // The response ends here; read to the end so the connection can be reused
+                return true;
+            }
+            if (trailing[0] >= 0) {
+                return ++trailing[0] < TRAILING_CHUNKS;
+            }
+            if (chunk.has("message") && chunk.getAsJsonObject("message").has("content")) {
+                String piece = chunk.getAsJsonObject("message").get("content").getAsString();
+                content.append(piece);
+                // Ollama streams one token per chunk
+                tokens[0]++;
+                if (listener != null) {
+                    listener.onTokens(tokens[0]);
+                }
+                if (detector.feed(piece)) {
+                    trailing[0] = 0;
+                }
+            }
+            return true;
+        }, call);
+        if (detector.getEnd() >= 0) {
+            System.out.println("JSON已完整，共生成 " + tokens[0] + " 个token");
+            return content.substring(0, detector.getEnd());
+        }
+        return content.toString();
+    }
+    
     /**
      * Parse Ollama response and extract content
      */
@@ -0,0 +1,85 @@
+package com.example.utils.bigmodel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fixed-bucket histogram; percentiles are reported as the upper bound of the bucket they fall in
+ */
+class Histogram {
+    private final double[] bounds;
+    // One more than bounds: the last bucket takes everything above the highest bound
+    private final long[] counts;
+    private long count;
+    private double sum;
+    private double max;
+
+    /**
+     * @param bounds ascending upper bounds of the buckets
+     */
+    Histogram(double... bounds) {
+        this.bounds = bounds;
+        this.counts = new long[bounds.length + 1];
+    }
+
+    /**
+     * Bounds growing by a factor of two, starting at the given value
+     */
+    static Histogram exponential(double first, int buckets) {
+        double[] bounds = new double[buckets];
+        for (int i = 0; i < buckets; i++) {
+            bounds[i] = first * Math.pow(2, i);
+        }
+        return new Histogram(bounds);
+    }
+
+    synchronized void record(double value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", count);
+        map.put("mean", count == 0 ? 0 : round(sum / count));
+        map.put("p50", percentile(0.5));
+        map.put("p90", percentile(0.9));
+        map.put("p99", percentile(0.99));
+        map.put("max", round(max));
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            buckets.put(i < bounds.length ? "<=" + format(bounds[i]) : ">" + format(bounds[bounds.length - 1]), counts[i]);
+        }
+        map.put("buckets", buckets);
+        return map;
+    }
+
+    private double percentile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return round(Math.min(bounds[i], max));
+            }
+        }
+        return round(max);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String format(double bound) {
+        return bound == Math.rint(bound) ? String.valueOf((long) bound) : String.valueOf(bound);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.utils.bigmodel;
+
+/**
+ * Follows streamed model output and reports when the first top-level JSON object is closed.
+ * Braces inside string literals (including escaped quotes) are ignored.
+ */
+class JsonCompletionDetector {
+    private int depth = 0;
+    private boolean started = false;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private int length = 0;
+    private int end = -1;
+
+    /**
+     * Feed the next chunk of output
+     * @return true once the first JSON object is complete
+     */
+    boolean feed(String chunk) {
+        for (int i = 0; i < chunk.length() && end < 0; i++) {
+            char c = chunk.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"' && started) {
+                inString = true;
+            } else if (c == '{') {
+                started = true;
+                depth++;
+            } else if (c == '}' && started) {
+                depth--;
+                if (depth == 0) {
+                    end = length + i + 1;
+                }
+            }
+        }
+        length += chunk.length();
+        return end >= 0;
+    }
+
+    /**
+     * Length of the output up to and including the closing brace, or -1 if not complete yet
+     */
+    int getEnd() {
+        return end;
+    }
+}
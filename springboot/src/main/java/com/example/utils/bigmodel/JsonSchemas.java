@@ -0,0 +1,60 @@
+package com.example.utils.bigmodel;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON schemas for Ollama's "format" parameter, which constrains generation to valid JSON of the given shape
+ */
+public class JsonSchemas {
+
+    /**
+     * An object whose listed fields are all required strings
+     */
+    public static JsonObject stringFields(Collection<String> fields) {
+        JsonObject properties = new JsonObject();
+        for (String field : fields) {
+            JsonObject property = new JsonObject();
+            property.addProperty("type", "string");
+            properties.add(field, property);
+        }
+        return object(properties, fields);
+    }
+
+    /**
+     * An object whose fields are required arrays, each holding only values from its own list
+     */
+    public static JsonObject enumArrayFields(Map<String, List<String>> fields) {
+        JsonObject properties = new JsonObject();
+        for (Map.Entry<String, List<String>> field : fields.entrySet()) {
+            JsonObject items = new JsonObject();
+            items.addProperty("type", "string");
+            items.add("enum", toArray(field.getValue()));
+            JsonObject property = new JsonObject();
+            property.addProperty("type", "array");
+            property.add("items", items);
+            properties.add(field.getKey(), property);
+        }
+        return object(properties, fields.keySet());
+    }
+
+    private static JsonObject object(JsonObject properties, Collection<String> required) {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+        schema.add("properties", properties);
+        schema.add("required", toArray(required));
+        return schema;
+    }
+
+    private static JsonArray toArray(Collection<String> values) {
+        JsonArray array = new JsonArray();
+        for (String value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.utils.bigmodel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LLM call metrics: latency and token histograms per stage, and tokens/sec gauges.
+ * The gauges are moving averages over recent calls, so they follow load changes and model swaps.
+ */
+public class LlmMetrics {
+    // Weight of the newest call in the moving averages
+    private static final double RATE_SMOOTHING = 0.2;
+
+    private static final Map<String, StageMetrics> stages = new LinkedHashMap<>();
+
+    private static double evalRate = -1;
+    private static double promptEvalRate = -1;
+    private static long promptTokens;
+    private static long outputTokens;
+
+    /**
+     * @param promptTokens prompt size: Ollama's count, or an estimate if the call did not report it
+     */
+    static void record(String stage, OllamaCallMetrics call, long promptTokens) {
+        StageMetrics metrics = stage(stage);
+        synchronized (metrics) {
+            metrics.calls++;
+        }
+        if (call.getLatency() >= 0) {
+            metrics.latencyMs.record(call.getLatency() / 1e6);
+        }
+        if (call.getFirstToken() >= 0) {
+            metrics.firstTokenMs.record(call.getFirstToken() / 1e6);
+        }
+        if (promptTokens >= 0) {
+            metrics.promptTokens.record(promptTokens);
+        }
+        if (call.getEvalCount() >= 0) {
+            metrics.outputTokens.record(call.getEvalCount());
+        }
+        double rate = call.getEvalRate();
+        if (rate > 0) {
+            metrics.evalRate.record(rate);
+        }
+        synchronized (LlmMetrics.class) {
+            LlmMetrics.promptTokens += Math.max(0, promptTokens);
+            outputTokens += Math.max(0, call.getEvalCount());
+            if (rate > 0) {
+                evalRate = evalRate < 0 ? rate : evalRate + (rate - evalRate) * RATE_SMOOTHING;
+            }
+            double promptRate = call.getPromptEvalRate();
+            if (promptRate > 0) {
+                promptEvalRate = promptEvalRate < 0 ? promptRate : promptEvalRate + (promptRate - promptEvalRate) * RATE_SMOOTHING;
+            }
+        }
+    }
+
+    static void recordCached(String stage) {
+        StageMetrics metrics = stage(stage);
+        synchronized (metrics) {
+            metrics.cached++;
+        }
+    }
+
+    private static StageMetrics stage(String stage) {
+        synchronized (stages) {
+            return stages.computeIfAbsent(stage, s -> new StageMetrics());
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (LlmMetrics.class) {
+            stats.put("evalTokensPerSecond", evalRate < 0 ? null : Math.round(evalRate * 10) / 10.0);
+            stats.put("promptTokensPerSecond", promptEvalRate < 0 ? null : Math.round(promptEvalRate * 10) / 10.0);
+            stats.put("promptTokens", promptTokens);
+            stats.put("outputTokens", outputTokens);
+        }
+        Map<String, Object> byStage = new LinkedHashMap<>();
+        synchronized (stages) {
+            for (Map.Entry<String, StageMetrics> stage : stages.entrySet()) {
+                byStage.put(stage.getKey(), stage.getValue().toMap());
+            }
+        }
+        stats.put("stages", byStage);
+        return stats;
+    }
+
+    private static class StageMetrics {
+        private long calls;
+        private long cached;
+        private final Histogram latencyMs = Histogram.exponential(250, 11);
+        private final Histogram firstTokenMs = Histogram.exponential(100, 11);
+        private final Histogram promptTokens = Histogram.exponential(128, 9);
+        private final Histogram outputTokens = Histogram.exponential(16, 9);
+        private final Histogram evalRate = Histogram.exponential(1, 9);
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            synchronized (this) {
+                map.put("calls", calls);
+                map.put("cached", cached);
+            }
+            map.put("latencyMs", latencyMs.toMap());
+            map.put("firstTokenMs", firstTokenMs.toMap());
+            map.put("promptTokens", promptTokens.toMap());
+            map.put("outputTokens", outputTokens.toMap());
+            map.put("evalTokensPerSecond", evalRate.toMap());
+            return map;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.utils.bigmodel;
+
+import com.example.utils.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of LLM responses: an in-memory LRU in front of one file per response on disk.
+ * Keys are hashes of everything that determines the answer (model, options, system and user prompt),
+ * so re-running a task or reprocessing an identical paper does not cost another model call.
+ * Entries expire after LLM_CACHE_TTL_HOURS; the oldest files are evicted once the directory exceeds LLM_CACHE_DISK_MAX_MB.
+ */
+public class LlmResponseCache {
+    private static final long TTL_MILLIS = Config.LLM_CACHE_TTL_HOURS * 3600_000L;
+    private static final long DISK_MAX_BYTES = Config.LLM_CACHE_DISK_MAX_MB * 1024L * 1024L;
+    private static final File DIR = new File(Config.LLM_CACHE_PATH);
+
+    private static final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > Config.LLM_CACHE_MEMORY_ENTRIES;
+        }
+    };
+
+    private static final AtomicLong memoryHits = new AtomicLong();
+    private static final AtomicLong diskHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong stores = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    // Bytes on disk; computed on first write
+    private static long diskBytes = -1;
+
+    /**
+     * @return the cached response, or null if there is none or it has expired
+     */
+    public static String get(String key) {
+        if (!Config.LLM_CACHE_ENABLED) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (now - entry.created < TTL_MILLIS) {
+                    memoryHits.incrementAndGet();
+                    return entry.value;
+                }
+                memory.remove(key);
+            }
+        }
+
+        File file = fileOf(key);
+        if (file.isFile() && now - file.lastModified() < TTL_MILLIS) {
+            try {
+                String value = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                remember(key, new Entry(value, file.lastModified()));
+                diskHits.incrementAndGet();
+                return value;
+            } catch (IOException e) {
+                System.err.println("读取LLM缓存失败: " + file + " " + e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public static void put(String key, String value) {
+        if (!Config.LLM_CACHE_ENABLED) {
+            return;
+        }
+        remember(key, new Entry(value, System.currentTimeMillis()));
+        stores.incrementAndGet();
+
+        File file = fileOf(key);
+        File part = new File(file.getPath() + "." + UUID.randomUUID() + ".part");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            Files.write(part.toPath(), bytes);
+            long previous = file.length();
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            addDiskBytes(bytes.length - previous);
+        } catch (IOException e) {
+            // The in-memory tier still has it, a failed disk write only costs persistence
+            System.err.println("写入LLM缓存失败: " + file + " " + e.getMessage());
+            part.delete();
+        }
+    }
+
+    private static void remember(String key, Entry entry) {
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+    }
+
+    /**
+     * Two-level directory layout keeps single directories small
+     */
+    private static File fileOf(String key) {
+        return new File(new File(DIR, key.substring(0, 2)), key + ".txt");
+    }
+
+    private static synchronized void addDiskBytes(long delta) {
+        if (diskBytes < 0) {
+            diskBytes = 0;
+            for (File file : listFiles()) {
+                diskBytes += file.length();
+            }
+        } else {
+            diskBytes += delta;
+        }
+        if (diskBytes > DISK_MAX_BYTES) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * Delete expired files, then the least recently written ones until the cache is back to 90% of its limit
+     */
+    private static void evictOldest() {
+        List<File> files = listFiles();
+        files.sort(Comparator.comparingLong(File::lastModified));
+        long now = System.currentTimeMillis();
+        long target = DISK_MAX_BYTES / 10 * 9;
+        for (File file : files) {
+            if (diskBytes <= target && now - file.lastModified() < TTL_MILLIS) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                diskBytes -= length;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static List<File> listFiles() {
+        List<File> files = new ArrayList<>();
+        File[] buckets = DIR.listFiles(File::isDirectory);
+        if (buckets == null) {
+            return files;
+        }
+        for (File bucket : buckets) {
+            File[] entries = bucket.listFiles((dir, name) -> name.endsWith(".txt"));
+            if (entries != null) {
+                files.addAll(Arrays.asList(entries));
+            }
+        }
+        return files;
+    }
+
+    public static Map<String, Object> getStats() {
+        long hits = memoryHits.get() + diskHits.get();
+        long lookups = hits + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", Config.LLM_CACHE_ENABLED);
+        synchronized (memory) {
+            stats.put("memoryEntries", memory.size());
+        }
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0 : (double) hits / lookups);
+        stats.put("stores", stores.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long created;
+
+        Entry(String value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
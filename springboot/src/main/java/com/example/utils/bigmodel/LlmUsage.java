@@ -0,0 +1,107 @@
+package com.example.utils.bigmodel;
+
+import com.google.gson.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LLM calls made for one task, totalled per stage (metadata, concepts, concept N ...).
+ * Stages of one task run in parallel, so all methods are synchronized.
+ */
+public class LlmUsage {
+    private final Map<String, Totals> stages = new LinkedHashMap<>();
+
+    synchronized void add(String stage, OllamaCallMetrics call, long promptTokens) {
+        Totals totals = stages.computeIfAbsent(stage, s -> new Totals());
+        totals.calls++;
+        totals.promptTokens += Math.max(0, promptTokens);
+        totals.outputTokens += Math.max(0, call.getEvalCount());
+        totals.latencyNanos += Math.max(0, call.getLatency());
+        totals.loadNanos += Math.max(0, call.getLoadDuration());
+        totals.promptEvalNanos += Math.max(0, call.getPromptEvalDuration());
+        totals.evalNanos += Math.max(0, call.getEvalDuration());
+        // Stopped streams do not report the prompt size; it was estimated
+        totals.promptTokensEstimated |= call.getPromptEvalCount() < 0;
+    }
+
+    synchronized void addCached(String stage) {
+        stages.computeIfAbsent(stage, s -> new Totals()).cached++;
+    }
+
+    /**
+     * Calls sent to Ollama; cache hits not included
+     */
+    public synchronized int getCalls() {
+        int calls = 0;
+        for (Totals totals : stages.values()) {
+            calls += totals.calls;
+        }
+        return calls;
+    }
+
+    public synchronized int getPromptTokens() {
+        long tokens = 0;
+        for (Totals totals : stages.values()) {
+            tokens += totals.promptTokens;
+        }
+        return (int) tokens;
+    }
+
+    public synchronized int getOutputTokens() {
+        long tokens = 0;
+        for (Totals totals : stages.values()) {
+            tokens += totals.outputTokens;
+        }
+        return (int) tokens;
+    }
+
+    /**
+     * Time spent in LLM calls, summed over calls (parallel calls count twice)
+     */
+    public synchronized long getDurationMillis() {
+        long nanos = 0;
+        for (Totals totals : stages.values()) {
+            nanos += totals.latencyNanos;
+        }
+        return nanos / 1_000_000;
+    }
+
+    public synchronized boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    /**
+     * Per-stage breakdown, e.g. {"metadata":{"calls":1,"promptTokens":2100,...}}
+     */
+    public synchronized String toJson() {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, Totals> stage : stages.entrySet()) {
+            Totals totals = stage.getValue();
+            JsonObject entry = new JsonObject();
+            entry.addProperty("calls", totals.calls);
+            entry.addProperty("cached", totals.cached);
+            entry.addProperty("promptTokens", totals.promptTokens);
+            entry.addProperty("promptTokensEstimated", totals.promptTokensEstimated);
+            entry.addProperty("outputTokens", totals.outputTokens);
+            entry.addProperty("latencyMs", totals.latencyNanos / 1_000_000);
+            entry.addProperty("loadMs", totals.loadNanos / 1_000_000);
+            entry.addProperty("promptEvalMs", totals.promptEvalNanos / 1_000_000);
+            entry.addProperty("evalMs", totals.evalNanos / 1_000_000);
+            json.add(stage.getKey(), entry);
+        }
+        return json.toString();
+    }
+
+    private static class Totals {
+        private int calls;
+        private int cached;
+        private long promptTokens;
+        private boolean promptTokensEstimated;
+        private long outputTokens;
+        private long latencyNanos;
+        private long loadNanos;
+        private long promptEvalNanos;
+        private long evalNanos;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.utils.bigmodel;
+
+/**
+ * Timings and token counts of one Ollama call.
+ * Counters and durations come from Ollama's final response (durations in nanoseconds, -1 if unknown). A streamed
+ * call that was stopped early never gets that response; its output tokens and generation time are then taken
+ * from the stream itself and the prompt token count stays unknown.
+ */
+public class OllamaCallMetrics {
+    private String server;
+    private long latency = -1;
+    private long firstToken = -1;
+    private long promptEvalCount = -1;
+    private long evalCount = -1;
+    private long totalDuration = -1;
+    private long loadDuration = -1;
+    private long promptEvalDuration = -1;
+    private long evalDuration = -1;
+    // Counters and durations are Ollama's own, not derived from the stream
+    private boolean reported;
+
+    void setServer(String server) {
+        this.server = server;
+    }
+
+    void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    void setFirstToken(long firstToken) {
+        this.firstToken = firstToken;
+    }
+
+    void setReported(long promptEvalCount, long evalCount, long totalDuration, long loadDuration,
+                     long promptEvalDuration, long evalDuration) {
+        this.promptEvalCount = promptEvalCount;
+        this.evalCount = evalCount;
+        this.totalDuration = totalDuration;
+        this.loadDuration = loadDuration;
+        this.promptEvalDuration = promptEvalDuration;
+        this.evalDuration = evalDuration;
+        this.reported = true;
+    }
+
+    void setStreamed(long evalCount, long evalDuration) {
+        this.evalCount = evalCount;
+        this.evalDuration = evalDuration;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * From sending the request to the end of the response, as seen by the client
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * From sending the request to the first streamed chunk: queueing, model load and prompt evaluation
+     */
+    public long getFirstToken() {
+        return firstToken;
+    }
+
+    public long getPromptEvalCount() {
+        return promptEvalCount;
+    }
+
+    public long getEvalCount() {
+        return evalCount;
+    }
+
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    public long getLoadDuration() {
+        return loadDuration;
+    }
+
+    public long getPromptEvalDuration() {
+        return promptEvalDuration;
+    }
+
+    public long getEvalDuration() {
+        return evalDuration;
+    }
+
+    public boolean isReported() {
+        return reported;
+    }
+
+    /**
+     * Generated tokens per second, or -1 if unknown
+     */
+    public double getEvalRate() {
+        return evalCount > 0 && evalDuration > 0 ? evalCount * 1e9 / evalDuration : -1;
+    }
+
+    /**
+     * Prompt tokens read per second, or -1 if unknown
+     */
+    public double getPromptEvalRate() {
+        return promptEvalCount > 0 && promptEvalDuration > 0 ? promptEvalCount * 1e9 / promptEvalDuration : -1;
+    }
+}
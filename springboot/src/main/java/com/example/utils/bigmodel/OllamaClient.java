@@ -0,0 +1,483 @@
+package com.example.utils.bigmodel;
+
+import com.example.utils.Config;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared HTTP client for the Ollama API.
+ * Connections are pooled and kept alive between calls. Calls are spread over the servers in OLLAMA_BASE_URLS,
+ * each to the one with the fewest outstanding requests for its limit; every server takes at most its concurrency
+ * limit at once (OLLAMA_MAX_IN_FLIGHT, adapted to its observed speed by AdaptiveLimit) and further callers
+ * wait for a slot up to OLLAMA_QUEUE_TIMEOUT_SECONDS instead of piling requests onto it.
+ * Servers that fail their health check or trip their circuit breaker get no calls, and a call that failed
+ * because of its server is retried on another one (extraction calls have no side effects).
+ */
+public class OllamaClient {
+
+    private static final long KEEP_ALIVE_MILLIS = Config.OLLAMA_HTTP_KEEP_ALIVE_SECONDS * 1000L;
+
+    private static final List<OllamaEndpoint> endpoints = new ArrayList<>();
+    private static final AtomicInteger waiting = new AtomicInteger();
+    private static final AtomicLong completed = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong queueTimeouts = new AtomicLong();
+    private static final AtomicLong earlyStops = new AtomicLong();
+    private static final AtomicLong failovers = new AtomicLong();
+    // Spreads ties between equally loaded servers
+    private static final AtomicInteger nextEndpoint = new AtomicInteger();
+
+    private static final PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+    private static final CloseableHttpClient httpClient;
+
+    private static final RequestConfig HEALTH_CHECK_CONFIG = RequestConfig.custom()
+            .setConnectTimeout(Config.OLLAMA_CONNECT_TIMEOUT_SECONDS * 1000)
+            .setConnectionRequestTimeout(Config.OLLAMA_CONNECT_TIMEOUT_SECONDS * 1000)
+            .setSocketTimeout(Config.OLLAMA_CONNECT_TIMEOUT_SECONDS * 1000)
+            .build();
+
+    private static final ScheduledExecutorService healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ollama-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        for (String url : Config.OLLAMA_BASE_URLS) {
+            endpoints.add(new OllamaEndpoint(url));
+        }
+
+        // One connection per request slot, plus headroom for the odd health or warm-up call
+        connections.setMaxTotal((Config.OLLAMA_MAX_IN_FLIGHT_LIMIT + 2) * endpoints.size());
+        connections.setDefaultMaxPerRoute(Config.OLLAMA_MAX_IN_FLIGHT_LIMIT + 2);
+        connections.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Config.OLLAMA_CONNECT_TIMEOUT_SECONDS * 1000)
+                .setConnectionRequestTimeout(Config.OLLAMA_CONNECT_TIMEOUT_SECONDS * 1000)
+                .setSocketTimeout(Config.OLLAMA_READ_TIMEOUT_SECONDS * 1000)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connections)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long advertised = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return advertised > 0 ? Math.min(advertised, KEEP_ALIVE_MILLIS) : KEEP_ALIVE_MILLIS;
+                })
+                .evictIdleConnections(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS)
+                .evictExpiredConnections()
+                // A generation that timed out is not worth silently sending again
+                .disableAutomaticRetries()
+                .build();
+
+        healthChecker.scheduleWithFixedDelay(OllamaClient::checkHealth, Config.OLLAMA_HEALTH_CHECK_SECONDS,
+                Config.OLLAMA_HEALTH_CHECK_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(OllamaClient::shutdown, "ollama-client-shutdown"));
+    }
+
+    /**
+     * POST a JSON body to the Ollama API
+     * @param path API path, e.g. /api/chat
+     * @param metrics receives the timings and token counts of the call, may be null
+     * @return response body
+     * @throws IOException on connection errors, non-200 responses, or if no request slot became free in time
+     */
+    public static String post(String path, String json, OllamaCallMetrics metrics) throws IOException, InterruptedException {
+        return execute(path, json, metrics, (post, entity, attempt) -> {
+            String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+            attempt.recordTimings(body);
+            return body;
+        });
+    }
+
+    /**
+     * POST a JSON body and hand the streamed (NDJSON) response to the handler line by line, as it arrives
+     * @param handler returns false once it has what it needs; the rest of the response is then not read
+     * @param metrics receives the timings and token counts of the call, may be null
+     */
+    public static void postStreaming(String path, String json, LineHandler handler, OllamaCallMetrics metrics)
+            throws IOException, InterruptedException {
+        execute(path, json, metrics, (post, entity, attempt) -> {
+            if (entity == null) {
+                return null;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                attempt.recordLine(line);
+                // The handler has seen part of this response, so it cannot be sent again elsewhere
+                attempt.delivered = true;
+                boolean more;
+                try {
+                    more = handler.onLine(line);
+                } catch (IOException e) {
+                    attempt.serverFailure = false;
+                    throw e;
+                }
+                if (!more) {
+                    // Drop the connection instead of draining it: Ollama stops generating once the client is gone
+                    earlyStops.incrementAndGet();
+                    post.abort();
+                    return null;
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Base URLs of the configured servers
+     */
+    public static List<String> getBaseUrls() {
+        return Config.OLLAMA_BASE_URLS;
+    }
+
+    /**
+     * GET an API path of one server without taking a request slot; for short status calls such as /api/ps
+     */
+    public static String get(String baseUrl, String path) throws IOException {
+        return executeDirect(new HttpGet(baseUrl + path));
+    }
+
+    /**
+     * POST to one server outside the in-flight cap. Only for calls that do not generate, e.g. loading the model,
+     * which must not queue behind the extraction requests they are meant to speed up.
+     */
+    public static String postUncapped(String baseUrl, String path, String json) throws IOException {
+        HttpPost post = new HttpPost(baseUrl + path);
+        post.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+        return executeDirect(post);
+    }
+
+    private static String executeDirect(HttpRequestBase request) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            HttpEntity entity = response.getEntity();
+            String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+            int status = response.getStatusLine().getStatusCode();
+            if (status != 200) {
+                throw new IOException("Ollama API错误: HTTP " + status + (body.isEmpty() ? "" : " - " + body));
+            }
+            return body;
+        }
+    }
+
+    private static <T> T execute(String path, String json, OllamaCallMetrics metrics, ResponseReader<T> reader)
+            throws IOException, InterruptedException {
+        List<OllamaEndpoint> tried = new ArrayList<>();
+        Reservation reservation = reserve(tried);
+        if (reservation == null) {
+            throw new IOException("没有可用的Ollama节点（健康检查失败或已熔断）: " + String.join(", ", Config.OLLAMA_BASE_URLS));
+        }
+        while (true) {
+            tried.add(reservation.endpoint);
+            Attempt attempt = new Attempt();
+            try {
+                return executeOn(reservation, path, json, reader, attempt, metrics);
+            } catch (IOException e) {
+                Reservation next = attempt.serverFailure && !attempt.delivered && tried.size() <= Config.OLLAMA_FAILOVER_RETRIES
+                        ? reserve(tried) : null;
+                if (next == null) {
+                    throw e;
+                }
+                failovers.incrementAndGet();
+                System.err.println("Ollama节点 " + reservation.endpoint.getBaseUrl() + " 调用失败，改由 "
+                        + next.endpoint.getBaseUrl() + " 重试: " + e.getMessage());
+                reservation = next;
+            }
+        }
+    }
+
+    private static <T> T executeOn(Reservation reservation, String path, String json, ResponseReader<T> reader, Attempt attempt,
+                                   OllamaCallMetrics metrics) throws IOException, InterruptedException {
+        OllamaEndpoint endpoint = reservation.endpoint;
+        // The reservation is released however the call ends, including an interrupt while waiting for a slot;
+        // otherwise the server keeps counting the call as outstanding and a trial call stays "probing" forever
+        try {
+            AdaptiveLimit.Permit permit = acquireSlot(endpoint);
+            attempt.sent = System.nanoTime();
+            try {
+                HttpPost post = new HttpPost(endpoint.getBaseUrl() + path);
+                post.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
+                try (CloseableHttpResponse response = httpClient.execute(post)) {
+                    HttpEntity entity = response.getEntity();
+                    int status = response.getStatusLine().getStatusCode();
+                    if (status != 200) {
+                        String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+                        // A bad request fails on every server; a missing model or a server error is this server's problem
+                        attempt.serverFailure = status >= 500 || status == 404;
+                        // Ollama answers 503 when its own request queue is full
+                        attempt.overload = status == 503;
+                        throw new IOException("Ollama API错误: HTTP " + status + (body.isEmpty() ? "" : " - " + body));
+                    }
+                    // Reading the entity to the end hands the connection back to the pool for reuse
+                    T result = reader.read(post, entity, attempt);
+                    long end = System.nanoTime();
+                    completed.incrementAndGet();
+                    endpoint.onSuccess(permit, attempt.nanosPerToken(), attempt.queueShare(end));
+                    if (metrics != null) {
+                        attempt.fill(metrics, endpoint.getBaseUrl(), end);
+                    }
+                    return result;
+                }
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                if (attempt.serverFailure) {
+                    endpoint.onFailure(permit, attempt.overload || e instanceof SocketTimeoutException);
+                }
+                throw e;
+            } finally {
+                endpoint.releaseSlot();
+            }
+        } finally {
+            endpoint.release(reservation.trial);
+        }
+    }
+
+    /**
+     * Pick the server with the fewest outstanding calls, skipping those already tried, unhealthy or with an
+     * open breaker; a half-open breaker gets a trial call only if no other server is available
+     * @return null if no server can take the call
+     */
+    private static Reservation reserve(List<OllamaEndpoint> tried) {
+        List<OllamaEndpoint> candidates = new ArrayList<>();
+        int offset = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            OllamaEndpoint endpoint = endpoints.get((offset + i) % endpoints.size());
+            if (!tried.contains(endpoint)) {
+                candidates.add(endpoint);
+            }
+        }
+        // Load relative to each server's limit, so a faster server takes more; the stable sort keeps
+        // the rotated order among equally loaded servers
+        candidates.sort(Comparator.comparingDouble(OllamaEndpoint::getLoad));
+        for (OllamaEndpoint endpoint : candidates) {
+            if (endpoint.reserve()) {
+                return new Reservation(endpoint, false);
+            }
+        }
+        for (OllamaEndpoint endpoint : candidates) {
+            if (endpoint.reserveTrial()) {
+                return new Reservation(endpoint, true);
+            }
+        }
+        return null;
+    }
+
+    private static AdaptiveLimit.Permit acquireSlot(OllamaEndpoint endpoint) throws IOException, InterruptedException {
+        waiting.incrementAndGet();
+        try {
+            return endpoint.acquireSlot();
+        } catch (IOException e) {
+            queueTimeouts.incrementAndGet();
+            throw e;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private static void checkHealth() {
+        for (OllamaEndpoint endpoint : endpoints) {
+            HttpGet get = new HttpGet(endpoint.getBaseUrl() + "/api/version");
+            get.setConfig(HEALTH_CHECK_CONFIG);
+            try {
+                executeDirect(get);
+                endpoint.setHealthy(true);
+            } catch (IOException e) {
+                endpoint.setHealthy(false);
+            }
+        }
+    }
+
+    public static Map<String, Object> getStats() {
+        PoolStats pool = connections.getTotalStats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        List<Map<String, Object>> servers = new ArrayList<>();
+        int inFlight = 0;
+        for (OllamaEndpoint endpoint : endpoints) {
+            Map<String, Object> server = endpoint.getStats();
+            inFlight += (Integer) server.get("inFlight");
+            servers.add(server);
+        }
+        int limit = 0;
+        for (Map<String, Object> server : servers) {
+            limit += (Integer) server.get("limit");
+        }
+        stats.put("adaptive", Config.OLLAMA_ADAPTIVE_CONCURRENCY);
+        stats.put("limit", limit);
+        stats.put("inFlight", inFlight);
+        stats.put("waiting", waiting.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("failovers", failovers.get());
+        stats.put("queueTimeouts", queueTimeouts.get());
+        stats.put("earlyStops", earlyStops.get());
+        stats.put("connectionsLeased", pool.getLeased());
+        stats.put("connectionsIdle", pool.getAvailable());
+        stats.put("servers", servers);
+        return stats;
+    }
+
+    /**
+     * Receives one line of a streamed response
+     */
+    public interface LineHandler {
+        /**
+         * @return false to stop reading the response
+         */
+        boolean onLine(String line) throws IOException;
+    }
+
+    private interface ResponseReader<T> {
+        T read(HttpPost post, HttpEntity entity, Attempt attempt) throws IOException;
+    }
+
+    private static class Reservation {
+        private final OllamaEndpoint endpoint;
+        // The trial call of a half-open breaker
+        private final boolean trial;
+
+        Reservation(OllamaEndpoint endpoint, boolean trial) {
+            this.endpoint = endpoint;
+            this.trial = trial;
+        }
+    }
+
+    /**
+     * How one call to one server went: whether it may be retried on another, and how fast the server was
+     */
+    private static class Attempt {
+        // Failed because of the server, not because of the request or the caller
+        private boolean serverFailure = true;
+        // Timed out or refused as too many: the server is overloaded
+        private boolean overload;
+        // Part of the response was already handed to the caller
+        private boolean delivered;
+
+        // System.nanoTime() of sending the request, and of the first and last streamed lines
+        private long sent;
+        private long firstLine;
+        private long lastLine;
+        private int lines;
+        // Timings Ollama reports with the final response, in nanoseconds; -1 if the response was not read to the end
+        private boolean reported;
+        private long totalDuration = -1;
+        private long loadDuration = -1;
+        private long promptEvalDuration = -1;
+        private long evalDuration = -1;
+        private long evalCount = -1;
+        private long promptEvalCount = -1;
+
+        void recordLine(String line) {
+            long now = System.nanoTime();
+            if (lines++ == 0) {
+                firstLine = now;
+            }
+            lastLine = now;
+            // Only the final line carries timings; skip parsing the others
+            if (line.contains("\"eval_count\"")) {
+                recordTimings(line);
+            }
+        }
+
+        void recordTimings(String json) {
+            try {
+                JsonObject response = JsonParser.parseString(json).getAsJsonObject();
+                if (!response.has("eval_count") && !response.has("eval_duration")) {
+                    return;
+                }
+                totalDuration = getLong(response, "total_duration");
+                loadDuration = getLong(response, "load_duration");
+                promptEvalDuration = getLong(response, "prompt_eval_duration");
+                evalDuration = getLong(response, "eval_duration");
+                evalCount = getLong(response, "eval_count");
+                promptEvalCount = getLong(response, "prompt_eval_count");
+                reported = true;
+            } catch (RuntimeException e) {
+                // Not a chat response; no timings
+            }
+        }
+
+        /**
+         * Generation time per output token, from Ollama's counters or else from the pace of the stream
+         */
+        double nanosPerToken() {
+            if (evalDuration > 0 && evalCount > 0) {
+                return (double) evalDuration / evalCount;
+            }
+            return lines > 1 ? (double) (lastLine - firstLine) / (lines - 1) : -1;
+        }
+
+        /**
+         * Share of the call not spent loading, reading the prompt or generating: waiting in Ollama's queue
+         */
+        double queueShare(long end) {
+            long latency = end - sent;
+            if (evalDuration < 0 || latency <= 0) {
+                return -1;
+            }
+            long work = Math.max(0, loadDuration) + Math.max(0, promptEvalDuration) + evalDuration;
+            return Math.max(0, latency - work) / (double) latency;
+        }
+
+        void fill(OllamaCallMetrics metrics, String server, long end) {
+            metrics.setServer(server);
+            metrics.setLatency(end - sent);
+            if (lines > 0) {
+                metrics.setFirstToken(firstLine - sent);
+            }
+            if (reported) {
+                metrics.setReported(promptEvalCount, evalCount, totalDuration, loadDuration, promptEvalDuration, evalDuration);
+            } else if (lines > 0) {
+                // Stopped before the final response: one streamed chunk per token
+                metrics.setStreamed(lines, lastLine - firstLine);
+            }
+        }
+
+        private static long getLong(JsonObject object, String field) {
+            return object.has(field) ? object.get(field).getAsLong() : -1;
+        }
+    }
+
+    public static void shutdown() {
+        healthChecker.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            System.err.println("关闭Ollama HTTP客户端失败: " + e.getMessage());
+        }
+    }
+}
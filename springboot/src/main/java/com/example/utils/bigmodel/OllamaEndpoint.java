@@ -0,0 +1,167 @@
+package com.example.utils.bigmodel;
+
+import com.example.utils.Config;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One Ollama server: its adaptive request limit, load, health and circuit breaker.
+ * After OLLAMA_BREAKER_FAILURES consecutive failures the breaker opens and the server gets no calls for
+ * OLLAMA_BREAKER_OPEN_SECONDS; then a single trial call decides whether it is closed again or stays open.
+ */
+class OllamaEndpoint {
+    private static final long OPEN_MILLIS = Config.OLLAMA_BREAKER_OPEN_SECONDS * 1000L;
+
+    private final String baseUrl;
+    private final AdaptiveLimit limit = new AdaptiveLimit(Config.OLLAMA_MAX_IN_FLIGHT);
+    // Calls routed here: waiting for a slot or in flight
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // Set while the one trial call of a half-open breaker runs
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong breakerTrips = new AtomicLong();
+
+    private volatile long openUntil;
+    private volatile boolean healthy = true;
+
+    OllamaEndpoint(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Outstanding calls relative to the current limit
+     */
+    double getLoad() {
+        return (double) outstanding.get() / limit.getLimit();
+    }
+
+    /**
+     * Count a call routed to this server
+     * @return false if it is unhealthy or its breaker is open
+     */
+    boolean reserve() {
+        if (!healthy || isBreakerOpen()) {
+            return false;
+        }
+        outstanding.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Route the trial call of a half-open breaker here; only one runs at a time
+     */
+    boolean reserveTrial() {
+        if (!healthy || !isBreakerOpen() || !openPeriodOver() || !probing.compareAndSet(false, true)) {
+            return false;
+        }
+        outstanding.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Wait for a request slot on this server
+     * @throws IOException if none became free in OLLAMA_QUEUE_TIMEOUT_SECONDS
+     */
+    AdaptiveLimit.Permit acquireSlot() throws IOException, InterruptedException {
+        AdaptiveLimit.Permit permit = limit.acquire(Config.OLLAMA_QUEUE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (permit == null) {
+            throw new IOException("等待Ollama请求槽位超时（" + Config.OLLAMA_QUEUE_TIMEOUT_SECONDS + "秒），"
+                    + baseUrl + " 当前上限 " + limit.getLimit() + " 个并发请求");
+        }
+        return permit;
+    }
+
+    void releaseSlot() {
+        limit.release();
+    }
+
+    /**
+     * End of a call started with reserve() or reserveTrial()
+     */
+    void release(boolean trial) {
+        outstanding.decrementAndGet();
+        if (trial) {
+            probing.set(false);
+        }
+    }
+
+    /**
+     * @param nanosPerToken generation time per output token, negative if unknown
+     * @param queueShare share of the call spent waiting inside Ollama, negative if unknown
+     */
+    void onSuccess(AdaptiveLimit.Permit permit, double nanosPerToken, double queueShare) {
+        limit.onSuccess(permit, nanosPerToken, queueShare);
+        completed.incrementAndGet();
+        if (consecutiveFailures.getAndSet(0) >= Config.OLLAMA_BREAKER_FAILURES) {
+            System.out.println("Ollama节点恢复: " + baseUrl);
+        }
+    }
+
+    /**
+     * A failure of the server itself (connection, timeout, 5xx), not of the request
+     * @param overload the call timed out or was refused as too many; lowers the concurrency limit
+     */
+    void onFailure(AdaptiveLimit.Permit permit, boolean overload) {
+        if (overload) {
+            limit.onOverload(permit);
+        }
+        failed.incrementAndGet();
+        boolean halfOpen = isBreakerOpen() && openPeriodOver();
+        int failures = consecutiveFailures.incrementAndGet();
+        // Trip on reaching the threshold, or reopen when the trial call failed
+        if (failures == Config.OLLAMA_BREAKER_FAILURES || halfOpen) {
+            openUntil = System.currentTimeMillis() + OPEN_MILLIS;
+            breakerTrips.incrementAndGet();
+            System.err.println("Ollama节点连续失败 " + failures + " 次，暂停使用 " + Config.OLLAMA_BREAKER_OPEN_SECONDS + " 秒: " + baseUrl);
+        }
+    }
+
+    void setHealthy(boolean healthy) {
+        if (this.healthy != healthy) {
+            System.out.println("Ollama节点" + (healthy ? "健康检查恢复: " : "健康检查失败: ") + baseUrl);
+        }
+        this.healthy = healthy;
+        if (healthy && isBreakerOpen()) {
+            // The server answers again; let the next call through as the trial
+            openUntil = 0;
+        }
+    }
+
+    private boolean isBreakerOpen() {
+        return consecutiveFailures.get() >= Config.OLLAMA_BREAKER_FAILURES;
+    }
+
+    private boolean openPeriodOver() {
+        return System.currentTimeMillis() >= openUntil;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("url", baseUrl);
+        stats.put("healthy", healthy);
+        stats.put("breaker", !isBreakerOpen() ? "closed" : openPeriodOver() ? "half-open" : "open");
+        stats.put("outstanding", outstanding.get());
+        stats.put("limit", limit.getLimit());
+        stats.put("inFlight", limit.getInFlight());
+        stats.put("limitIncreases", limit.getIncreases());
+        stats.put("limitDecreases", limit.getDecreases());
+        double baseline = limit.getBaselineNanosPerToken();
+        stats.put("baselineMsPerToken", baseline > 0 ? Math.round(baseline / 1e4) / 100.0 : null);
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("breakerTrips", breakerTrips.get());
+        return stats;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.utils.bigmodel;
+
+import com.example.utils.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Fits paper text into a token budget for an LLM prompt.
+ * Running headers/footers, page numbers and the reference list are dropped; the keywords, the abstract
+ * and the title page are kept first, the rest of the body fills whatever budget is left.
+ * Selected lines keep their original order.
+ */
+public class PromptBuilder {
+
+    // Lines of the title page: title, authors, affiliations, journal
+    private static final int TITLE_PAGE_LINES = 40;
+    // Lines taken after an abstract heading
+    private static final int ABSTRACT_LINES = 30;
+    // A short line seen this often is a running header or footer
+    private static final int REPEATED_LINE_COUNT = 3;
+    private static final int REPEATED_LINE_MAX_LENGTH = 80;
+
+    // Bare numbers only below 1000: a line like "2023" on the title page is the year, not a page number
+    private static final Pattern PAGE_NUMBER = Pattern.compile(
+            "^[-—\\s]*(\\d{1,3}|第\\s*\\d+\\s*页.*|page\\s+\\d+(\\s+of\\s+\\d+)?)[-—\\s]*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REFERENCES_HEADING = Pattern.compile(
+            "^\\s*(\\[?参\\s*考\\s*文\\s*献]?|references|bibliography)\\s*[:：]?\\s*$", Pattern.CASE_INSENSITIVE);
+    public static final Pattern ABSTRACT_HEADING = Pattern.compile(
+            "^\\s*[\\[【(（]?\\s*(摘\\s*要|abstract\\b)\\s*[\\]】)）]?", Pattern.CASE_INSENSITIVE);
+    public static final Pattern KEYWORDS_HEADING = Pattern.compile(
+            "^\\s*[\\[【(（]?\\s*(关\\s*键\\s*词|关\\s*键\\s*字|key\\s*words?\\b|index\\s+terms\\b)\\s*[\\]】)）]?", Pattern.CASE_INSENSITIVE);
+
+    private static final int PRIORITY_KEYWORDS = 0;
+    private static final int PRIORITY_ABSTRACT = 1;
+    private static final int PRIORITY_TITLE_PAGE = 2;
+    private static final int PRIORITY_BODY = 3;
+
+    /**
+     * Rough token count for the configured model: CJK characters are counted one by one, other text by length
+     */
+    public static int estimateTokens(CharSequence text) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (isCjk(text.charAt(i))) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return (int) Math.ceil(cjk * Config.LLM_CJK_TOKENS_PER_CHAR + other / Config.LLM_CHARS_PER_TOKEN);
+    }
+
+    /**
+     * Select the most useful lines of a paper that fit into the token budget
+     */
+    public static String fitPaperText(String text, int tokenBudget) {
+        List<String> lines = dropBoilerplate(text.split("\\r?\\n"));
+
+        int[] priority = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            priority[i] = i < TITLE_PAGE_LINES ? PRIORITY_TITLE_PAGE : PRIORITY_BODY;
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (KEYWORDS_HEADING.matcher(line).find()) {
+                priority[i] = PRIORITY_KEYWORDS;
+                // A heading on a line of its own is followed by the keywords
+                boolean headingOnly = KEYWORDS_HEADING.matcher(line).replaceFirst("").replaceAll("[:：\\s]", "").isEmpty();
+                if (headingOnly && i + 1 < lines.size()) {
+                    priority[i + 1] = PRIORITY_KEYWORDS;
+                }
+            } else if (ABSTRACT_HEADING.matcher(line).find()) {
+                for (int j = i; j < Math.min(lines.size(), i + ABSTRACT_LINES); j++) {
+                    if (j > i && KEYWORDS_HEADING.matcher(lines.get(j)).find()) {
+                        break;
+                    }
+                    priority[j] = Math.min(priority[j], PRIORITY_ABSTRACT);
+                }
+            }
+        }
+
+        boolean[] selected = new boolean[lines.size()];
+        int used = 0;
+        // Most important line that did not fit; it fills the rest of the budget at the end
+        int overflow = -1;
+        for (int level = PRIORITY_KEYWORDS; level <= PRIORITY_BODY; level++) {
+            for (int i = 0; i < lines.size(); i++) {
+                if (priority[i] != level) {
+                    continue;
+                }
+                int cost = estimateTokens(lines.get(i)) + 1;
+                if (used + cost > tokenBudget) {
+                    if (overflow < 0) {
+                        overflow = i;
+                    }
+                    if (level == PRIORITY_BODY) {
+                        // The body is taken in order; stop at the first line that does not fit
+                        break;
+                    }
+                    continue;
+                }
+                selected[i] = true;
+                used += cost;
+            }
+        }
+        if (overflow >= 0) {
+            // Cut the line off at the budget instead of dropping it, so a long abstract paragraph still contributes
+            String head = truncateToTokens(lines.get(overflow), tokenBudget - used - 1);
+            if (!head.isEmpty()) {
+                lines.set(overflow, head);
+                selected[overflow] = true;
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (selected[i]) {
+                result.append(lines.get(i)).append('\n');
+            }
+        }
+        String fitted = result.toString().trim();
+        if (fitted.isEmpty()) {
+            // Nothing survived the selection (only boilerplate lines)
+            return truncateToTokens(text.trim(), tokenBudget);
+        }
+        return fitted;
+    }
+
+    /**
+     * Longest prefix of the text whose estimated token count fits into the budget
+     */
+    static String truncateToTokens(String text, int tokenBudget) {
+        double tokens = 0;
+        for (int i = 0; i < text.length(); i++) {
+            tokens += isCjk(text.charAt(i)) ? Config.LLM_CJK_TOKENS_PER_CHAR : 1 / Config.LLM_CHARS_PER_TOKEN;
+            if (tokens > tokenBudget) {
+                // Do not split a surrogate pair
+                int end = i > 0 && Character.isHighSurrogate(text.charAt(i - 1)) ? i - 1 : i;
+                return text.substring(0, end).trim();
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Remove page numbers, lines repeated on many pages (running headers/footers) and everything
+     * from the reference list on
+     */
+    private static List<String> dropBoilerplate(String[] lines) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String line : lines) {
+            String key = line.trim();
+            if (!key.isEmpty() && key.length() <= REPEATED_LINE_MAX_LENGTH) {
+                counts.merge(key, 1, Integer::sum);
+            }
+        }
+        List<String> kept = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < lines.length; i++) {
+            String trimmed = lines[i].trim();
+            if (REFERENCES_HEADING.matcher(trimmed).matches()) {
+                break;
+            }
+            boolean firstSeen = seen.add(trimmed);
+            if (trimmed.isEmpty() || PAGE_NUMBER.matcher(trimmed).matches()) {
+                continue;
+            }
+            // Running headers often repeat the title or journal name; keep it once if it is on the title page
+            if (counts.getOrDefault(trimmed, 0) >= REPEATED_LINE_COUNT && !(firstSeen && i < TITLE_PAGE_LINES)) {
+                continue;
+            }
+            kept.add(trimmed);
+        }
+        return kept;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+                || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS;
+    }
+}
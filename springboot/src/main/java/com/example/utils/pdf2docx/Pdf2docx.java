@@ -1,11 +1,15 @@
 package com.example.utils.pdf2docx;
 
 import com.example.utils.Config;
+import com.example.utils.pyworker.PythonWorkerPool;
+import com.google.gson.JsonObject;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.TimeUnit;
 import java.nio.charset.StandardCharsets;
 
@@ -72,8 +76,68 @@ public class Pdf2docx {
             return;
         }
 
+        runAtomically(pdfFile, docxFile);
+    }
+
+    /**
+     * 只转换单个PDF文件，输出到指定的docx路径，不扫描整个上传目录
+     * @param pdfFile 待转换的PDF文件
+     * @param docxFile 输出的docx文件
+     * @return 生成的docx文件
+     */
+    public static File convertFile(File pdfFile, File docxFile) throws IOException, InterruptedException {
+        if (!pdfFile.isFile()) {
+            throw new IOException("PDF文件不存在: " + pdfFile.getAbsolutePath());
+        }
+        validateDirectories(pdfFile.getAbsoluteFile().getParentFile(), docxFile.getAbsoluteFile().getParentFile());
+        validatePythonScript();
+
+        if (!docxFile.exists() && !runAtomically(pdfFile, docxFile)) {
+            throw new IOException("PDF转docx失败: " + pdfFile.getName());
+        }
+        if (!docxFile.isFile()) {
+            throw new IOException("未生成docx文件: " + docxFile.getAbsolutePath());
+        }
+        return docxFile;
+    }
+
+    /**
+     * 先写入 .docx.part 再原子改名，已存在的docx一定是完整的；中断遗留的 .part 在下次转换前删除
+     */
+    private static boolean runAtomically(File pdfFile, File docxFile)
+            throws IOException, InterruptedException {
+        File partFile = new File(docxFile.getPath() + ".part");
+        Files.deleteIfExists(partFile.toPath());
+        try {
+            if (!runConverter(pdfFile, partFile) || !partFile.isFile()) {
+                return false;
+            }
+            Files.move(partFile.toPath(), docxFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } finally {
+            Files.deleteIfExists(partFile.toPath());
+        }
+    }
+
+    private static boolean runConverter(File pdfFile, File docxFile)
+            throws IOException, InterruptedException {
         LogUtil_pdf2docx.log("开始处理: " + pdfFile.getName());
 
+        if (PythonWorkerPool.isEnabled()) {
+            JsonObject request = new JsonObject();
+            request.addProperty("op", "pdf2docx");
+            request.addProperty("input", pdfFile.getAbsolutePath());
+            request.addProperty("output", docxFile.getAbsolutePath());
+            JsonObject response = PythonWorkerPool.execute(request, TimeUnit.MINUTES.toMillis(TIMEOUT_MINUTES));
+            if (response != null) {
+                boolean ok = response.has("ok") && response.get("ok").getAsBoolean();
+                LogUtil_pdf2docx.log(ok ? "转换成功: " + pdfFile.getName()
+                        : "转换失败: " + pdfFile.getName() + " " + response.get("error"));
+                return ok;
+            }
+            // 进程池不可用时，退回到每次启动一个python3进程
+        }
+
         // 使用绝对路径调用Python脚本
         String[] command = {
                 "python3",
@@ -107,7 +171,7 @@ public class Pdf2docx {
         if (!finished) {
             process.destroyForcibly();
             LogUtil_pdf2docx.log("转换超时: " + pdfFile.getName());
-            return;
+            return false;
         }
 
         int exitCode = process.exitValue();
@@ -116,5 +180,6 @@ public class Pdf2docx {
         } else {
             LogUtil_pdf2docx.log("转换失败: " + pdfFile.getName() + " (退出码: " + exitCode + ")");
         }
+        return exitCode == 0;
     }
 }
\ No newline at end of file
@@ -1,10 +1,19 @@
 package com.example.utils.pdf2txt;
 
 import com.example.utils.Config;
+import com.example.utils.pyworker.PythonWorkerPool;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import java.io.*;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.nio.charset.StandardCharsets;
 
@@ -43,6 +52,116 @@ public class Pdf2txt {
         }
     }
 
+    /**
+     * 只转换单个PDF文件，输出到指定的txt路径，不扫描整个上传目录
+     * @param pdfFile 待转换的PDF文件
+     * @param txtFile 输出的txt文件
+     * @return 生成的txt文件
+     */
+    public static File convertFile(File pdfFile, File txtFile) throws IOException, InterruptedException {
+        return convertFile(pdfFile, txtFile, false);
+    }
+
+    /**
+     * @param keepNewlines 保留换行（元数据提取按行分析）；下载用的txt去掉所有换行
+     */
+    public static File convertFile(File pdfFile, File txtFile, boolean keepNewlines) throws IOException, InterruptedException {
+        File logDirAbs = new File(LOG_PATH);
+        createDirectory(logDirAbs, "日志目录");
+
+        if (!pdfFile.isFile()) {
+            throw new IOException("PDF文件不存在: " + pdfFile.getAbsolutePath());
+        }
+        createDirectory(txtFile.getAbsoluteFile().getParentFile(), "输出目录");
+        validatePythonScript();
+
+        Boolean pooled = convertWithWorkerPool(pdfFile, txtFile, keepNewlines, logDirAbs);
+        if (pooled != null) {
+            if (!pooled) {
+                throw new IOException("PDF转txt失败: " + pdfFile.getName());
+            }
+            return txtFile;
+        }
+
+        // 进程池不可用时，退回到每次启动一个python3进程
+        List<String> command = new ArrayList<>(Arrays.asList(
+                "python3",
+                "-u",
+                PY_SCRIPT,
+                "--input_file", pdfFile.getAbsolutePath(),
+                "--output_file", txtFile.getAbsolutePath(),
+                "--pytesseract_dir", new File(OCR_PATH).getAbsolutePath()
+        ));
+        if (keepNewlines) {
+            command.add("--keep_newlines");
+        }
+
+        if (!executeConversion(command.toArray(new String[0]), logDirAbs)) {
+            throw new IOException("PDF转txt失败: " + pdfFile.getName());
+        }
+        if (!txtFile.isFile()) {
+            throw new IOException("未生成txt文件: " + txtFile.getAbsolutePath());
+        }
+        return txtFile;
+    }
+
+    /**
+     * 交给常驻Python进程转换
+     * @return 转换是否成功；进程池不可用时返回null
+     */
+    private static Boolean convertWithWorkerPool(File pdfFile, File txtFile, boolean keepNewlines, File logDir)
+            throws IOException, InterruptedException {
+        if (!PythonWorkerPool.isEnabled()) {
+            return null;
+        }
+        JsonObject request = new JsonObject();
+        request.addProperty("op", "pdf2txt");
+        request.addProperty("input", pdfFile.getAbsolutePath());
+        request.addProperty("output", txtFile.getAbsolutePath());
+        request.addProperty("pytesseract_dir", new File(OCR_PATH).getAbsolutePath());
+        request.addProperty("keep_newlines", keepNewlines);
+
+        JsonObject response = PythonWorkerPool.execute(request, TimeUnit.MINUTES.toMillis(TIMEOUT_MINUTES));
+        if (response == null) {
+            return null;
+        }
+        boolean ok = response.has("ok") && response.get("ok").getAsBoolean();
+        log(logDir.getAbsolutePath(), ok ? "转换成功完成: " + pdfFile.getName()
+                : "转换失败: " + pdfFile.getName() + " " + response.get("error"));
+        return ok && txtFile.isFile();
+    }
+
+    /**
+     * 只对PDF中没有文本层的页做OCR（由常驻Python进程完成）
+     * @param pages 页码，从1开始
+     * @return 页码到识别文本的映射；进程池不可用时返回null
+     */
+    public static Map<Integer, String> ocrPages(File pdfFile, List<Integer> pages) throws IOException, InterruptedException {
+        if (!PythonWorkerPool.isEnabled()) {
+            return null;
+        }
+        JsonObject request = new JsonObject();
+        request.addProperty("op", "ocr_pages");
+        request.addProperty("input", pdfFile.getAbsolutePath());
+        request.addProperty("pytesseract_dir", new File(OCR_PATH).getAbsolutePath());
+        JsonArray pageArray = new JsonArray();
+        pages.forEach(pageArray::add);
+        request.add("pages", pageArray);
+
+        JsonObject response = PythonWorkerPool.execute(request, TimeUnit.MINUTES.toMillis(TIMEOUT_MINUTES));
+        if (response == null) {
+            return null;
+        }
+        if (!response.has("ok") || !response.get("ok").getAsBoolean()) {
+            throw new IOException("OCR失败: " + pdfFile.getName() + " " + response.get("error"));
+        }
+        Map<Integer, String> texts = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : response.getAsJsonObject("texts").entrySet()) {
+            texts.put(Integer.parseInt(entry.getKey()), entry.getValue().getAsString());
+        }
+        return texts;
+    }
+
     private static void validateDirectory(File dir, String dirName) throws IOException {
         if (!dir.exists() || !dir.isDirectory()) {
             throw new IOException(dirName + "不存在: " + dir.getAbsolutePath());
@@ -73,7 +192,7 @@ public class Pdf2txt {
         };
     }
 
-    private static void executeConversion(String[] command, File logDir)
+    private static boolean executeConversion(String[] command, File logDir)
             throws IOException, InterruptedException {
         ProcessBuilder pb = new ProcessBuilder(command);
         pb.redirectErrorStream(true);
@@ -85,10 +204,10 @@ public class Pdf2txt {
         if (!finished) {
             process.destroyForcibly();
             log(logDir.getAbsolutePath(), "转换超时");
-            return;
+            return false;
         }
 
-        logExitStatus(process, logDir);
+        return logExitStatus(process, logDir);
     }
 
     private static void startOutputLogger(Process process, File logDir) {
@@ -105,10 +224,11 @@ public class Pdf2txt {
         }).start();
     }
 
-    private static void logExitStatus(Process process, File logDir) {
+    private static boolean logExitStatus(Process process, File logDir) {
         int exitCode = process.exitValue();
         String status = exitCode == 0 ? "转换成功完成" : "转换失败，退出码: " + exitCode;
         log(logDir.getAbsolutePath(), status);
+        return exitCode == 0;
     }
 
     private static void log(String logDir, String message) {
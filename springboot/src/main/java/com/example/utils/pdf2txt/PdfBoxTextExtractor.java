@@ -0,0 +1,134 @@
+package com.example.utils.pdf2txt;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在JVM内用PDFBox提取文本层，不启动Python进程。
+ * 只有没有文本层的页（扫描件）才交给Python做OCR；PDFBox无法解析的文件整个交给备用引擎。
+ */
+public class PdfBoxTextExtractor implements TextExtractor {
+    private final TextExtractor fallback;
+
+    public PdfBoxTextExtractor(TextExtractor fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public File extract(File pdfFile, File txtFile) throws IOException, InterruptedException {
+        if (!pdfFile.isFile()) {
+            throw new IOException("PDF文件不存在: " + pdfFile.getAbsolutePath());
+        }
+
+        String[] pageTexts;
+        List<Integer> blankPages = new ArrayList<>();
+        try (PDDocument document = PDDocument.load(pdfFile)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            pageTexts = new String[document.getNumberOfPages()];
+            for (int page = 1; page <= pageTexts.length; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = stripper.getText(document);
+                if (text.trim().isEmpty()) {
+                    blankPages.add(page);
+                } else {
+                    pageTexts[page - 1] = text;
+                }
+            }
+        } catch (IOException e) {
+            // 加密或损坏的文件，交给Python引擎处理
+            System.err.println("PDFBox无法解析 " + pdfFile.getName() + "，改用" + fallback.getName() + "引擎: " + e.getMessage());
+            return fallback.extract(pdfFile, txtFile);
+        }
+
+        if (!blankPages.isEmpty()) {
+            System.out.println("需要OCR的页: " + blankPages.size() + "/" + pageTexts.length + " (" + pdfFile.getName() + ")");
+            Map<Integer, String> ocrTexts;
+            try {
+                ocrTexts = Pdf2txt.ocrPages(pdfFile, blankPages);
+            } catch (IOException e) {
+                if (blankPages.size() == pageTexts.length) {
+                    throw e;
+                }
+                // 已有文本层的页足够后续使用，OCR失败的页留空
+                System.err.println(e.getMessage());
+                ocrTexts = Collections.emptyMap();
+            }
+            if (ocrTexts == null) {
+                // 无法单独OCR这些页，整个文件交给Python引擎
+                return fallback.extract(pdfFile, txtFile);
+            }
+            for (Integer page : blankPages) {
+                pageTexts[page - 1] = ocrTexts.getOrDefault(page, "");
+            }
+        }
+
+        File parent = txtFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("无法创建输出目录: " + parent.getAbsolutePath());
+        }
+        // 与 pdf_to_text.py 的 save_text 保持一致：页间用换行连接后去掉所有换行
+        String content = String.join("\n", pageTexts).replace("\r", "").replace("\n", "");
+        Files.write(txtFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return txtFile;
+    }
+
+    /**
+     * 逐页提取，没有文本层的页在轮到它时单独OCR，停止后不再处理后面的页
+     */
+    @Override
+    public void extractPages(File pdfFile, PageConsumer consumer) throws IOException, InterruptedException {
+        if (!pdfFile.isFile()) {
+            throw new IOException("PDF文件不存在: " + pdfFile.getAbsolutePath());
+        }
+
+        PDDocument loaded;
+        try {
+            loaded = PDDocument.load(pdfFile);
+        } catch (IOException e) {
+            System.err.println("PDFBox无法解析 " + pdfFile.getName() + "，改用" + fallback.getName() + "引擎: " + e.getMessage());
+            fallback.extractPages(pdfFile, consumer);
+            return;
+        }
+
+        try (PDDocument document = loaded) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            int pageCount = document.getNumberOfPages();
+            for (int page = 1; page <= pageCount; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = stripper.getText(document);
+                if (text.trim().isEmpty()) {
+                    text = ocrPage(pdfFile, page);
+                }
+                if (!consumer.accept(page, text)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private String ocrPage(File pdfFile, int page) throws InterruptedException {
+        try {
+            Map<Integer, String> texts = Pdf2txt.ocrPages(pdfFile, Collections.singletonList(page));
+            return texts == null ? "" : texts.getOrDefault(page, "");
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return "";
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "pdfbox";
+    }
+}
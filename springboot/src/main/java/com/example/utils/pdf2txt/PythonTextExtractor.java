@@ -0,0 +1,36 @@
+package com.example.utils.pdf2txt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 整个文件交给 pdf_to_text.py 处理（fitz + Tesseract OCR）
+ */
+public class PythonTextExtractor implements TextExtractor {
+
+    @Override
+    public File extract(File pdfFile, File txtFile) throws IOException, InterruptedException {
+        return Pdf2txt.convertFile(pdfFile, txtFile);
+    }
+
+    /**
+     * pdf_to_text.py 只能处理整个文件，因此整个文件提取完后作为一页交给consumer（保留换行）
+     */
+    @Override
+    public void extractPages(File pdfFile, PageConsumer consumer) throws IOException, InterruptedException {
+        File txtFile = File.createTempFile("pdf2txt_", ".txt");
+        try {
+            Pdf2txt.convertFile(pdfFile, txtFile, true);
+            consumer.accept(1, new String(Files.readAllBytes(txtFile.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(txtFile.toPath());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "python";
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.utils.pdf2txt;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * PDF文本提取引擎。txt文件的格式与 pdf_to_text.py 一致（各页文本拼接，去掉换行），逐页提取的文本保留换行
+ */
+public interface TextExtractor {
+
+    /**
+     * 提取PDF文本并写入txt文件
+     * @param pdfFile 待提取的PDF文件
+     * @param txtFile 输出的txt文件
+     * @return 生成的txt文件
+     */
+    File extract(File pdfFile, File txtFile) throws IOException, InterruptedException;
+
+    /**
+     * 逐页提取文本（保留换行），consumer 返回 false 时立即停止，后面的页不再提取或OCR
+     */
+    void extractPages(File pdfFile, PageConsumer consumer) throws IOException, InterruptedException;
+
+    /**
+     * 引擎名称，用于配置和日志
+     */
+    String getName();
+
+    interface PageConsumer {
+        /**
+         * @param page 页码，从1开始
+         * @param text 该页文本
+         * @return 是否继续提取下一页
+         */
+        boolean accept(int page, String text);
+    }
+}
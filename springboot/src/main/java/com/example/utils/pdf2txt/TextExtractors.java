@@ -0,0 +1,15 @@
+package com.example.utils.pdf2txt;
+
+import com.example.utils.Config;
+
+/**
+ * 按配置 PDF_TEXT_EXTRACTOR 选择文本提取引擎
+ */
+public class TextExtractors {
+    private static final TextExtractor PYTHON = new PythonTextExtractor();
+    private static final TextExtractor PDFBOX = new PdfBoxTextExtractor(PYTHON);
+
+    public static TextExtractor get() {
+        return "python".equalsIgnoreCase(Config.PDF_TEXT_EXTRACTOR) ? PYTHON : PDFBOX;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.utils.pyworker;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个常驻的Python转换进程，通过stdin/stdout按行交换JSON（协议见 conversion_worker.py）
+ */
+public class PythonWorker {
+    private static final Gson GSON = new Gson();
+    private static final String EOF = "\u0000EOF";
+    private static final AtomicLong REQUEST_IDS = new AtomicLong();
+
+    private final Process process;
+    private final BufferedWriter stdin;
+    private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+    private final String name;
+
+    private int jobs;
+    private long lastUsed = System.currentTimeMillis();
+    private boolean broken;
+
+    private PythonWorker(Process process, String name) {
+        this.process = process;
+        this.name = name;
+        this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        startReader();
+        startLogger();
+    }
+
+    /**
+     * 启动进程并等待其导入依赖后发出就绪消息
+     */
+    public static PythonWorker start(String script, String name, long startupMillis) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder("python3", "-u", script);
+        pb.environment().put("PYTHONIOENCODING", "utf-8"); // 协议固定使用UTF-8，文件名可能包含中文
+        PythonWorker worker = new PythonWorker(pb.start(), name);
+        JsonObject ready = worker.await(startupMillis);
+        if (ready == null || !ready.has("ready")) {
+            worker.destroy();
+            throw new IOException("Python转换进程启动失败: " + name);
+        }
+        LogUtil_pyworker.log(name + " 已就绪: " + ready);
+        return worker;
+    }
+
+    /**
+     * 发送一个请求并等待响应；超时或进程退出时进程被标记为不可用
+     * @throws IOException 超时或进程异常
+     */
+    public JsonObject call(JsonObject request, long timeoutMillis) throws IOException, InterruptedException {
+        long id = REQUEST_IDS.incrementAndGet();
+        request.addProperty("id", id);
+        try {
+            stdin.write(GSON.toJson(request));
+            stdin.newLine();
+            stdin.flush();
+        } catch (IOException e) {
+            broken = true;
+            throw new IOException("无法写入Python转换进程 " + name + ": " + e.getMessage(), e);
+        }
+
+        JsonObject response = await(timeoutMillis);
+        if (response == null) {
+            broken = true;
+            throw new IOException("Python转换进程 " + name + " 处理超时或已退出");
+        }
+        if (!response.has("id") || response.get("id").getAsLong() != id) {
+            broken = true;
+            throw new IOException("Python转换进程 " + name + " 响应不匹配: " + response);
+        }
+        jobs++;
+        lastUsed = System.currentTimeMillis();
+        return response;
+    }
+
+    /**
+     * 健康检查：进程存活且能及时响应ping
+     */
+    public boolean ping(long timeoutMillis) {
+        if (!isAlive()) {
+            return false;
+        }
+        try {
+            JsonObject request = new JsonObject();
+            request.addProperty("op", "ping");
+            JsonObject response = call(request, timeoutMillis);
+            return response.has("ok") && response.get("ok").getAsBoolean();
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private JsonObject await(long timeoutMillis) throws InterruptedException {
+        String line = responses.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (line == null) {
+            return null;
+        }
+        if (EOF.equals(line)) {
+            responses.offer(EOF); // 让后续调用也立即失败
+            return null;
+        }
+        try {
+            return GSON.fromJson(line, JsonObject.class);
+        } catch (RuntimeException e) {
+            LogUtil_pyworker.log(name + " 无法解析响应: " + line);
+            return null;
+        }
+    }
+
+    public boolean isAlive() {
+        return !broken && process.isAlive();
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void destroy() {
+        broken = true;
+        try {
+            stdin.close();
+        } catch (IOException ignored) {
+            // 进程可能已经退出
+        }
+        process.destroyForcibly();
+        LogUtil_pyworker.log(name + " 已停止 (处理任务数: " + jobs + ")");
+    }
+
+    private void startReader() {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    responses.offer(line);
+                }
+            } catch (IOException e) {
+                LogUtil_pyworker.log(name + " 读取响应失败: " + e.getMessage());
+            } finally {
+                responses.offer(EOF);
+            }
+        }, name + "-stdout");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void startLogger() {
+        Thread logger = new Thread(() -> {
+            try (BufferedReader err = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = err.readLine()) != null) {
+                    LogUtil_pyworker.log("[" + name + "] " + line); // 转换脚本的输出写入日志
+                }
+            } catch (IOException e) {
+                LogUtil_pyworker.log(name + " 读取Python输出失败: " + e.getMessage());
+            }
+        }, name + "-stderr");
+        logger.setDaemon(true);
+        logger.start();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.utils.pyworker;
+
+import com.example.utils.Config;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 常驻Python转换进程池。
+ * 进程启动时只导入一次 fitz/pytesseract/pdf2docx，之后每次转换只付出转换本身的开销。
+ * 空闲一段时间的进程在借出前先做一次ping检查；处理满 PY_WORKER_MAX_JOBS 个任务后回收重启，
+ * 避免转换库的内存泄漏累积；单个任务超时则直接杀掉该进程。
+ */
+public class PythonWorkerPool {
+    private static final long PING_TIMEOUT_MILLIS = 5000;
+
+    private static final Semaphore permits = new Semaphore(Config.PY_WORKER_POOL_SIZE, true);
+    private static final ConcurrentLinkedDeque<PythonWorker> idle = new ConcurrentLinkedDeque<>();
+    private static final List<PythonWorker> all = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger workerIds = new AtomicInteger();
+
+    private static final AtomicLong started = new AtomicLong();
+    private static final AtomicLong recycled = new AtomicLong();
+    private static final AtomicLong unhealthy = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong completed = new AtomicLong();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(PythonWorkerPool::shutdown, "python-worker-shutdown"));
+    }
+
+    /**
+     * 进程池是否可用；不可用时调用方退回到每次启动一个python3进程
+     */
+    public static boolean isEnabled() {
+        return Config.PY_WORKER_ENABLED && new File(Config.PY_WORKER_SCRIPT).isFile();
+    }
+
+    /**
+     * 在一个常驻进程上执行请求
+     * @param request 请求，op 字段指定操作（见 conversion_worker.py）
+     * @param timeoutMillis 单个任务的超时时间，超时后该进程被杀掉
+     * @return 响应；无法启动Python进程时返回null，由调用方退回到单次进程模式
+     * @throws IOException 任务超时或进程在处理中退出
+     */
+    public static JsonObject execute(JsonObject request, long timeoutMillis) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            PythonWorker worker;
+            try {
+                worker = borrow();
+            } catch (IOException e) {
+                LogUtil_pyworker.log("无法启动Python转换进程: " + e.getMessage());
+                return null;
+            }
+
+            try {
+                JsonObject response = worker.call(request, timeoutMillis);
+                completed.incrementAndGet();
+                giveBack(worker);
+                return response;
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                retire(worker);
+                throw e;
+            } catch (InterruptedException e) {
+                // 进程仍在处理被放弃的任务，不能再借给别人
+                retire(worker);
+                throw e;
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static PythonWorker borrow() throws IOException, InterruptedException {
+        PythonWorker worker;
+        while ((worker = idle.pollFirst()) != null) {
+            long idleMillis = System.currentTimeMillis() - worker.getLastUsed();
+            if (worker.isAlive() && (idleMillis < Config.PY_WORKER_HEALTH_CHECK_SECONDS * 1000L
+                    || worker.ping(PING_TIMEOUT_MILLIS))) {
+                return worker;
+            }
+            unhealthy.incrementAndGet();
+            LogUtil_pyworker.log(worker.getName() + " 健康检查失败，重新启动");
+            retire(worker);
+        }
+        worker = PythonWorker.start(Config.PY_WORKER_SCRIPT, "python-worker-" + workerIds.incrementAndGet(),
+                Config.PY_WORKER_STARTUP_SECONDS * 1000L);
+        all.add(worker);
+        started.incrementAndGet();
+        return worker;
+    }
+
+    private static void giveBack(PythonWorker worker) {
+        if (!worker.isAlive()) {
+            retire(worker);
+        } else if (worker.getJobs() >= Config.PY_WORKER_MAX_JOBS) {
+            recycled.incrementAndGet();
+            retire(worker);
+        } else {
+            // 后进先出：优先复用刚用过的进程
+            idle.offerFirst(worker);
+        }
+    }
+
+    private static void retire(PythonWorker worker) {
+        all.remove(worker);
+        worker.destroy();
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("poolSize", Config.PY_WORKER_POOL_SIZE);
+        stats.put("running", all.size());
+        stats.put("idle", idle.size());
+        stats.put("busy", Config.PY_WORKER_POOL_SIZE - permits.availablePermits());
+        stats.put("completed", completed.get());
+        stats.put("started", started.get());
+        stats.put("recycled", recycled.get());
+        stats.put("unhealthy", unhealthy.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    public static void shutdown() {
+        List<PythonWorker> workers = new ArrayList<>(all);
+        all.clear();
+        idle.clear();
+        for (PythonWorker worker : workers) {
+            worker.destroy();
+        }
+    }
+}
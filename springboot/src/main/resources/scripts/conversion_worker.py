@@ -0,0 +1,79 @@
+# -*- coding: utf-8 -*-
+"""
+常驻转换进程：启动时导入一次 fitz / pytesseract / pdf2docx，之后通过 stdin/stdout
+逐行接收 JSON 请求并返回 JSON 结果，避免每次转换都重新启动解释器和导入依赖。
+
+请求:  {"id": 1, "op": "ping"}
+       {"id": 2, "op": "pdf2txt", "input": "a.pdf", "output": "a.txt", "pytesseract_dir": "/usr/bin", "keep_newlines": false}
+       {"id": 3, "op": "ocr_pages", "input": "a.pdf", "pages": [2, 5], "pytesseract_dir": "/usr/bin"}
+       {"id": 4, "op": "pdf2docx", "input": "a.pdf", "output": "a.docx"}
+响应:  {"id": 2, "ok": true} 或 {"id": 2, "ok": false, "error": "..."}
+"""
+import json
+import os
+import sys
+
+# 协议只使用真正的 stdout，转换脚本里的 print 全部转到 stderr 作为日志
+protocol_out = sys.stdout
+sys.stdout = sys.stderr
+
+sys.path.insert(0, os.path.dirname(os.path.abspath(__file__)))
+
+import_errors = {}
+try:
+    import pdf_to_text
+except Exception as e:
+    import_errors['pdf2txt'] = str(e)
+try:
+    import pdf_converter
+except Exception as e:
+    import_errors['pdf2docx'] = str(e)
+
+
+def handle(request):
+    op = request.get('op')
+    if op == 'ping':
+        return {'ok': True, 'pid': os.getpid()}
+    module = 'pdf2txt' if op == 'ocr_pages' else op
+    if module in import_errors:
+        return {'ok': False, 'error': f"依赖导入失败: {import_errors[module]}"}
+    if op == 'pdf2txt':
+        pdf_to_text.set_tesseract_path(request['pytesseract_dir'])
+        if pdf_to_text.process_pdf(request['input'], request['output'], request.get('keep_newlines', False)):
+            return {'ok': True}
+        return {'ok': False, 'error': 'PDF转txt失败'}
+    if op == 'ocr_pages':
+        pdf_to_text.set_tesseract_path(request['pytesseract_dir'])
+        return {'ok': True, 'texts': pdf_to_text.ocr_pdf_pages(request['input'], request['pages'])}
+    if op == 'pdf2docx':
+        exit_code = pdf_converter.convert_pdf_to_docx(request['input'], request['output'])
+        if exit_code == 0:
+            return {'ok': True}
+        return {'ok': False, 'error': f"PDF转docx失败，退出码: {exit_code}"}
+    return {'ok': False, 'error': f"未知操作: {op}"}
+
+
+def reply(response):
+    protocol_out.write(json.dumps(response, ensure_ascii=False) + '\n')
+    protocol_out.flush()
+
+
+def main():
+    reply({'ready': True, 'pid': os.getpid(), 'import_errors': import_errors})
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        request_id = None
+        try:
+            request = json.loads(line)
+            request_id = request.get('id')
+            response = handle(request)
+        except Exception as e:
+            response = {'ok': False, 'error': str(e)}
+        response['id'] = request_id
+        reply(response)
+
+
+if __name__ == '__main__':
+    main()
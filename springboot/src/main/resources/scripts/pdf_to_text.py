@@ -6,11 +6,15 @@ import sys
 from PIL import Image
 
 
-def pdftotxt(input_dir, output_dir, pytesseract_dir):
+def set_tesseract_path(pytesseract_dir):
     # 设置Tesseract路径（跨平台兼容）
     tesseract_exe = 'tesseract.exe' if sys.platform == 'win32' else 'tesseract'
     pytesseract.pytesseract.tesseract_cmd = os.path.join(pytesseract_dir, tesseract_exe)
 
+
+def pdftotxt(input_dir, output_dir, pytesseract_dir):
+    set_tesseract_path(pytesseract_dir)
+
     for filename in os.listdir(input_dir):
         if not filename.lower().endswith('.pdf'):
             continue
@@ -26,7 +30,7 @@ def pdftotxt(input_dir, output_dir, pytesseract_dir):
         process_pdf(pdf_path, txt_path)
 
 
-def process_pdf(pdf_path, txt_path):
+def process_pdf(pdf_path, txt_path, keep_newlines=False):
     text_content = []
     try:
         doc = fitz.open(pdf_path)
@@ -38,10 +42,22 @@ def process_pdf(pdf_path, txt_path):
                 print(f"OCR处理中: {os.path.basename(pdf_path)} 第{page_num+1}页")
                 text_content.append(ocr_page(page))
 
-        save_text(txt_path, text_content)
+        save_text(txt_path, text_content, keep_newlines)
         print(f"成功转换: {os.path.basename(pdf_path)}")
+        return True
     except Exception as e:
         print(f"处理失败: {os.path.basename(pdf_path)} 错误: {str(e)}")
+        return False
+
+
+def ocr_pdf_pages(pdf_path, page_numbers):
+    # 只对指定页（从1开始）做OCR，其余页的文本由调用方自行提取
+    texts = {}
+    doc = fitz.open(pdf_path)
+    for page_num in page_numbers:
+        print(f"OCR处理中: {os.path.basename(pdf_path)} 第{page_num}页")
+        texts[str(page_num)] = ocr_page(doc[page_num - 1])
+    return texts
 
 
 def ocr_page(page):
@@ -50,17 +66,30 @@ def ocr_page(page):
     return pytesseract.image_to_string(img, lang='eng')
 
 
-def save_text(txt_path, content):
+def save_text(txt_path, content, keep_newlines=False):
+    # 下载用的txt去掉所有换行；keep_newlines 保留换行，供需要按行分析的元数据提取使用
     os.makedirs(os.path.dirname(txt_path), exist_ok=True)
+    text = '\n'.join(content)
     with open(txt_path, 'w', encoding='utf-8') as f:
-        f.write('\n'.join(content).replace('\n', ''))
+        f.write(text if keep_newlines else text.replace('\n', ''))
 
 
 if __name__ == "__main__":
     parser = argparse.ArgumentParser()
-    parser.add_argument('--input_dir', required=True)
-    parser.add_argument('--output_dir', required=True)
+    parser.add_argument('--input_dir')
+    parser.add_argument('--output_dir')
+    parser.add_argument('--input_file')
+    parser.add_argument('--output_file')
     parser.add_argument('--pytesseract_dir', required=True)
+    parser.add_argument('--keep_newlines', action='store_true')
     args = parser.parse_args()
 
+    if args.input_file:
+        # 单文件模式：只处理本次上传的文件
+        if not args.output_file:
+            parser.error('--input_file 需要同时指定 --output_file')
+        set_tesseract_path(args.pytesseract_dir)
+        sys.exit(0 if process_pdf(args.input_file, args.output_file, args.keep_newlines) else 1)
+    if not args.input_dir or not args.output_dir:
+        parser.error('需要指定 --input_file/--output_file 或 --input_dir/--output_dir')
     pdftotxt(args.input_dir, args.output_dir, args.pytesseract_dir)
@@ -0,0 +1,174 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DownloadUtilTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path dir;
+
+    private File file;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = dir.resolve("paper.pdf").toFile();
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.US_ASCII));
+        request = new MockHttpServletRequest("GET", "/download");
+        response = new MockHttpServletResponse();
+    }
+
+    private String send() throws IOException {
+        DownloadUtil.send(request, response, file, "paper.pdf");
+        return response.getContentAsString();
+    }
+
+    @Test
+    void sendsWholeFileWithoutRange() throws IOException {
+        assertEquals(CONTENT, send());
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void sendsClosedRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        assertEquals("2345", send());
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLengthLong());
+    }
+
+    @Test
+    void sendsOpenAndSuffixRanges() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=15-");
+        assertEquals("fghij", send());
+        assertEquals("bytes 15-19/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+
+        request = new MockHttpServletRequest("GET", "/download");
+        response = new MockHttpServletResponse();
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        assertEquals("hij", send());
+        assertEquals("bytes 17-19/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void clampsRangeEndToFileLength() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=18-99999999999999999999");
+        assertEquals("ij", send());
+        assertEquals("bytes 18-19/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-");
+        assertEquals("", send());
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+
+        request = new MockHttpServletRequest("GET", "/download");
+        response = new MockHttpServletResponse();
+        request.addHeader(HttpHeaders.RANGE, "bytes=-0");
+        send();
+        assertEquals(416, response.getStatus());
+    }
+
+    @Test
+    void ignoresMultipleMalformedAndForeignRanges() throws IOException {
+        for (String header : new String[]{"bytes=0-1,4-5", "bytes=5-2", "bytes=-", "bytes=a-b", "items=0-1"}) {
+            request = new MockHttpServletRequest("GET", "/download");
+            response = new MockHttpServletResponse();
+            request.addHeader(HttpHeaders.RANGE, header);
+            assertEquals(CONTENT, send(), header);
+            assertEquals(200, response.getStatus(), header);
+        }
+    }
+
+    @Test
+    void appliesRangeOnlyWhenIfRangeMatches() throws IOException {
+        send();
+        String etag = response.getHeader(HttpHeaders.ETAG);
+
+        request = new MockHttpServletRequest("GET", "/download");
+        response = new MockHttpServletResponse();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, etag);
+        assertEquals("01", send());
+        assertEquals(206, response.getStatus());
+
+        request = new MockHttpServletRequest("GET", "/download");
+        response = new MockHttpServletResponse();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+        assertEquals(CONTENT, send());
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    void appliesRangeOnlyWhenIfRangeDateIsCurrent() throws IOException {
+        long lastModified = file.lastModified() / 1000 * 1000;
+
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, lastModified);
+        assertEquals("01", send());
+
+        request = new MockHttpServletRequest("GET", "/download");
+        response = new MockHttpServletResponse();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, lastModified - 60_000);
+        assertEquals(CONTENT, send());
+    }
+
+    @Test
+    void answersNotModifiedForMatchingEtag() throws IOException {
+        send();
+        String etag = response.getHeader(HttpHeaders.ETAG);
+
+        request = new MockHttpServletRequest("GET", "/download");
+        response = new MockHttpServletResponse();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "W/" + etag);
+        assertEquals("", send());
+        assertEquals(304, response.getStatus());
+    }
+
+    @Test
+    void handsLargeBodiesToTomcatSendfile() throws IOException {
+        byte[] large = new byte[(int) DownloadUtil.SENDFILE_MIN_SIZE * 2];
+        Files.write(file.toPath(), large);
+        request.setAttribute(DownloadUtil.SENDFILE_SUPPORTED, Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-");
+        DownloadUtil.send(request, response, file, "paper.pdf");
+
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(file.getAbsolutePath(), request.getAttribute(DownloadUtil.SENDFILE_FILENAME));
+        assertEquals(100L, request.getAttribute(DownloadUtil.SENDFILE_START));
+        assertEquals((long) large.length, request.getAttribute(DownloadUtil.SENDFILE_END));
+        assertEquals(large.length - 100, response.getContentLengthLong());
+    }
+
+    @Test
+    void streamsSmallBodiesEvenWithSendfile() throws IOException {
+        request.setAttribute(DownloadUtil.SENDFILE_SUPPORTED, Boolean.TRUE);
+        assertEquals(CONTENT, send());
+        assertNull(request.getAttribute(DownloadUtil.SENDFILE_FILENAME));
+    }
+}
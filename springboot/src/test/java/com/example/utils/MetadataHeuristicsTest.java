@@ -0,0 +1,107 @@
+package com.example.utils;
+
+import com.example.utils.pdf2txt.PdfBoxTextExtractor;
+import com.example.utils.pdf2txt.PythonTextExtractor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetadataHeuristicsTest {
+
+    @TempDir
+    Path dir;
+
+    private File paper() throws Exception {
+        return TestPdfs.write(dir.resolve("paper.pdf").toFile(), TestPdfs.PAPER,
+                "Adaptive Batching for Document Ingestion", "Alice Zhang and Bob Li");
+    }
+
+    @Test
+    void readsAllFieldsFromExtractedExcerpt() throws Exception {
+        File pdf = paper();
+        MetadataHeuristics.Result result = MetadataHeuristics.extract(pdf, PaperConverter.extractTextPrefix(pdf, 12000));
+
+        assertEquals("10.1234/jts.2021.0042", result.getValue("doi"));
+        assertEquals(0.95, result.getConfidence("doi"));
+        assertEquals("2021", result.getValue("year"));
+        assertEquals("Journal of Testing Systems", result.getValue("source"));
+        assertEquals("School of Computer Science, Peking University, Beijing 100871, China", result.getValue("organ"));
+        assertEquals(0.85, result.getConfidence("organ"));
+        assertEquals("batching; ingestion; language models", result.getValue("keyword"));
+        assertEquals(0.9, result.getConfidence("keyword"));
+        assertTrue(result.getValue("summary").startsWith("Document ingestion pipelines"), result.getValue("summary"));
+        assertTrue(result.getValue("summary").endsWith("threefold reduction in wall time."), result.getValue("summary"));
+        assertEquals(0.9, result.getConfidence("summary"));
+        assertEquals("Adaptive Batching for Document Ingestion", result.getValue("title"));
+        assertEquals(0.9, result.getConfidence("title"));
+        assertEquals("Alice Zhang; Bob Li", result.getValue("author"));
+        assertEquals(0.85, result.getConfidence("author"));
+    }
+
+    /**
+     * The downloadable .txt has every line break removed; only fields found without line structure survive,
+     * which is why the pipeline passes the excerpt from {@link PaperConverter#extractTextPrefix} instead
+     */
+    @Test
+    void flattenedTextOnlyYieldsLineIndependentFields() throws Exception {
+        File pdf = paper();
+        File txt = new PdfBoxTextExtractor(new PythonTextExtractor()).extract(pdf, dir.resolve("paper.txt").toFile());
+        String flattened = new String(Files.readAllBytes(txt.toPath()), StandardCharsets.UTF_8);
+        assertTrue(flattened.indexOf('\n') < 0);
+
+        MetadataHeuristics.Result result = MetadataHeuristics.extract(null, flattened);
+
+        assertEquals("2021", result.getValue("year"));
+        assertEquals("Journal of Testing Systems", result.getValue("source"));
+        assertNull(result.getValue("keyword"));
+        assertNull(result.getValue("summary"));
+        assertNull(result.getValue("organ"));
+    }
+
+    @Test
+    void readsChineseTitlePage() {
+        String text = String.join("\n",
+                "计算机学报 第43卷 第5期 2020年5月",
+                "基于自适应批处理的文献入库方法",
+                "张三 1) 李四 2)",
+                "（清华大学 计算机科学与技术系, 北京 100084）",
+                "摘 要：文献入库流程的大部分时间花在等待模型调用上。本文按服务器对请求分批，",
+                "并根据观测到的延迟调整批大小。",
+                "关键词：批处理；文献入库；大语言模型",
+                "中图法分类号 TP391",
+                "1 引言");
+
+        MetadataHeuristics.Result result = MetadataHeuristics.extract(null, text);
+
+        assertEquals("2020", result.getValue("year"));
+        assertEquals(0.9, result.getConfidence("year"));
+        assertEquals("计算机学报", result.getValue("source"));
+        assertEquals("清华大学 计算机科学与技术系, 北京 100084", result.getValue("organ"));
+        assertEquals(0.85, result.getConfidence("organ"));
+        assertEquals("批处理; 文献入库; 大语言模型", result.getValue("keyword"));
+        assertEquals("文献入库流程的大部分时间花在等待模型调用上。本文按服务器对请求分批，并根据观测到的延迟调整批大小。",
+                result.getValue("summary"));
+    }
+
+    @Test
+    void readsKeywordsOnTheLineAfterTheirHeading() {
+        MetadataHeuristics.Result result = MetadataHeuristics.extract(null, "Title\nIndex Terms\nqueues, batching\nBody");
+        assertEquals("queues; batching", result.getValue("keyword"));
+    }
+
+    @Test
+    void distrustsDocumentInfoMissingFromTitlePage() throws Exception {
+        File pdf = TestPdfs.write(dir.resolve("other.pdf").toFile(), TestPdfs.PAPER, "A Completely Different Title", "Carol Wang");
+        MetadataHeuristics.Result result = MetadataHeuristics.extract(pdf, PaperConverter.extractTextPrefix(pdf, 12000));
+        assertEquals(0.5, result.getConfidence("title"));
+        assertEquals(0.4, result.getConfidence("author"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.utils.bigmodel;
+
+import com.example.utils.Config;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AdaptiveLimitTest {
+
+    private static final double FAST = 1_000_000;
+
+    @BeforeAll
+    static void requireDefaults() {
+        // Expected values below follow the default AIMD settings
+        assumeTrue(Config.OLLAMA_ADAPTIVE_CONCURRENCY && Config.OLLAMA_MIN_IN_FLIGHT == 1
+                && Config.OLLAMA_MAX_IN_FLIGHT_LIMIT == 4 && Config.OLLAMA_AIMD_BACKOFF == 0.7
+                && Config.OLLAMA_AIMD_SLOWDOWN == 1.5 && Config.OLLAMA_AIMD_QUEUE_SHARE == 0.3);
+    }
+
+    /**
+     * Run one window at full use: take every slot, report the last (saturated) call as fast, release all
+     */
+    private static void saturatedWindow(AdaptiveLimit limit) throws InterruptedException {
+        List<AdaptiveLimit.Permit> permits = new ArrayList<>();
+        for (int i = limit.getLimit(); i > 0; i--) {
+            permits.add(limit.acquire(1, TimeUnit.SECONDS));
+        }
+        limit.onSuccess(permits.get(permits.size() - 1), FAST, 0);
+        permits.forEach(permit -> limit.release());
+    }
+
+    private static AdaptiveLimit grownTo(int target) throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(1);
+        while (limit.getLimit() < target) {
+            saturatedWindow(limit);
+        }
+        return limit;
+    }
+
+    @Test
+    void growsByAboutOnePerWindowUpToTheBound() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(1);
+        saturatedWindow(limit);
+        assertEquals(2, limit.getLimit());
+        // 2 -> 2.5 -> 2.9 -> 3.24: each step is 1/limit
+        saturatedWindow(limit);
+        saturatedWindow(limit);
+        assertEquals(2, limit.getLimit());
+        saturatedWindow(limit);
+        assertEquals(3, limit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            saturatedWindow(limit);
+        }
+        assertEquals(Config.OLLAMA_MAX_IN_FLIGHT_LIMIT, limit.getLimit());
+        assertEquals(0, limit.getDecreases());
+    }
+
+    @Test
+    void doesNotGrowWhileSlotsAreFree() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(2);
+        for (int i = 0; i < 10; i++) {
+            AdaptiveLimit.Permit permit = limit.acquire(1, TimeUnit.SECONDS);
+            limit.onSuccess(permit, FAST, 0);
+            limit.release();
+        }
+        assertEquals(2, limit.getLimit());
+        assertEquals(0, limit.getIncreases());
+    }
+
+    @Test
+    void cutsWhenGenerationSlowsDown() throws InterruptedException {
+        AdaptiveLimit limit = grownTo(4);
+        AdaptiveLimit.Permit permit = limit.acquire(1, TimeUnit.SECONDS);
+        limit.onSuccess(permit, FAST * 2, 0);
+        limit.release();
+
+        assertEquals(2, limit.getLimit()); // 4 * 0.7
+        assertEquals(1, limit.getDecreases());
+        // The slow sample only nudges the baseline
+        assertTrue(limit.getBaselineNanosPerToken() < FAST * 1.05);
+    }
+
+    @Test
+    void cutsWhenCallsQueueInsideOllama() throws InterruptedException {
+        AdaptiveLimit limit = grownTo(4);
+        AdaptiveLimit.Permit permit = limit.acquire(1, TimeUnit.SECONDS);
+        limit.onSuccess(permit, -1, 0.5);
+        limit.release();
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    void cutsOncePerOverloadEpisode() throws InterruptedException {
+        AdaptiveLimit limit = grownTo(4);
+        AdaptiveLimit.Permit first = limit.acquire(1, TimeUnit.SECONDS);
+        AdaptiveLimit.Permit second = limit.acquire(1, TimeUnit.SECONDS);
+        Thread.sleep(1);
+
+        limit.onOverload(first);
+        limit.onOverload(second);
+        assertEquals(2, limit.getLimit());
+        assertEquals(1, limit.getDecreases());
+
+        // A call started after the cut may cut again
+        limit.release();
+        limit.release();
+        AdaptiveLimit.Permit third = limit.acquire(1, TimeUnit.SECONDS);
+        limit.onOverload(third);
+        limit.release();
+        assertEquals(2, limit.getDecreases());
+    }
+
+    @Test
+    void neverDropsBelowTheMinimum() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(1);
+        for (int i = 0; i < 3; i++) {
+            AdaptiveLimit.Permit permit = limit.acquire(1, TimeUnit.SECONDS);
+            limit.onOverload(permit);
+            limit.release();
+        }
+        assertEquals(1, limit.getLimit());
+    }
+
+    @Test
+    void fasterSampleBecomesTheBaseline() throws InterruptedException {
+        AdaptiveLimit limit = new AdaptiveLimit(1);
+        AdaptiveLimit.Permit permit = limit.acquire(1, TimeUnit.SECONDS);
+        limit.onSuccess(permit, FAST, 0);
+        limit.onSuccess(permit, FAST / 2, 0);
+        limit.release();
+        assertEquals(FAST / 2, limit.getBaselineNanosPerToken());
+    }
+
+    @Test
+    void waitsForAFreeSlot() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit(1);
+        assertNotNull(limit.acquire(1, TimeUnit.SECONDS));
+        assertNull(limit.acquire(10, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<AdaptiveLimit.Permit> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limit.acquire(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiter.isDone());
+        limit.release();
+        assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, limit.getInFlight());
+    }
+}
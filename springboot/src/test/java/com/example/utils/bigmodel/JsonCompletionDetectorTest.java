@@ -0,0 +1,65 @@
+package com.example.utils.bigmodel;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonCompletionDetectorTest {
+
+    /**
+     * Feed the output in chunks of the given size, as the streaming API would, and return the detected end
+     */
+    private static int endOf(String output, int chunkSize) {
+        JsonCompletionDetector detector = new JsonCompletionDetector();
+        for (int i = 0; i < output.length(); i += chunkSize) {
+            if (detector.feed(output.substring(i, Math.min(output.length(), i + chunkSize)))) {
+                break;
+            }
+        }
+        return detector.getEnd();
+    }
+
+    @Test
+    void detectsEndOfObjectSplitAcrossChunks() {
+        String json = "{\"title\":\"A\",\"keyword\":[\"x\",\"y\"],\"meta\":{\"year\":2020}}";
+        for (int chunkSize = 1; chunkSize <= json.length(); chunkSize++) {
+            assertEquals(json.length(), endOf(json, chunkSize), "chunk size " + chunkSize);
+        }
+    }
+
+    @Test
+    void endsAtFirstObjectAndIgnoresTrailingOutput() {
+        String json = "{\"a\":1}";
+        assertEquals(json.length(), endOf(json + "\n\nThe answer above {is} final.", 3));
+    }
+
+    @Test
+    void countsLeadingTextAndCodeFence() {
+        String output = "```json\n{\"a\":{\"b\":2}}\n```";
+        assertEquals(output.lastIndexOf('}') + 1, endOf(output, 4));
+    }
+
+    @Test
+    void ignoresBracesAndEscapedQuotesInStrings() {
+        String json = "{\"abstract\":\"uses } and { and \\\"quoted }\\\" text\\\\\",\"n\":1}";
+        assertEquals(json.length(), endOf(json, 1));
+        assertEquals(json.length(), endOf(json, 7));
+    }
+
+    @Test
+    void ignoresQuotesAndClosingBracesBeforeTheObject() {
+        String output = "Here is \"the\" result} {\"a\":\"}\"}";
+        assertEquals(output.length(), endOf(output, 5));
+    }
+
+    @Test
+    void reportsIncompleteObject() {
+        JsonCompletionDetector detector = new JsonCompletionDetector();
+        assertFalse(detector.feed("{\"a\":{\"b\":1}"));
+        assertEquals(-1, detector.getEnd());
+        assertTrue(detector.feed(", \"c\":\"}\"}"));
+        assertEquals("{\"a\":{\"b\":1}, \"c\":\"}\"}".length(), detector.getEnd());
+    }
+}